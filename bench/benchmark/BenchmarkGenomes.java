@@ -0,0 +1,90 @@
+
+package benchmark;
+
+import java.util.SplittableRandom;
+import neat.GeneNode;
+import neat.Genome;
+import neat.InnovationRegistry;
+import neat.SpeciesManipulator;
+
+/**
+ * Builds the Genomes and populations measured by the benchmarks
+ * Everything is seeded, so every fork measures the same networks
+ * @author rewil
+ */
+public class BenchmarkGenomes {
+    
+    public static final int inputs = 100;
+    public static final int outputs = 100; // 100 x 100 leaves room for 5000 direct connections alongside the Hidden Nodes
+    public static final long seed = 0x5EEDL;
+    
+    /**
+     * Generates a Genome with the given number of connections, roughly one in ten of them made by splitting an existing one
+     * Genomes built from the same registry and seed are identical
+     * @param innovations
+     * @param genes
+     * @param seed
+     * @return 
+     */
+    public static Genome build(InnovationRegistry innovations, int genes, long seed) {
+        Genome g = new Genome(innovations);
+        g.setRandom(new SplittableRandom(seed));
+        for(int i = 0; i < inputs + outputs; ++i) g.putNode(new GeneNode(i, i < inputs ? 0 : 2));
+        
+        SplittableRandom rand = new SplittableRandom(seed);
+        while(g.getConnectionCount() < genes) {
+            if(g.getConnectionCount() > 0 && rand.nextInt(10) == 0) {
+                g.mutateAddNode(g.getConnection(rand.nextInt(g.getConnectionCount())));
+            } else {
+                g.mutateAddConnection(rand.nextInt(inputs), inputs + rand.nextInt(outputs));
+            }
+        }
+        return g;
+    }
+    
+    /**
+     * Generates a relative of the given Genome built from the same registry and seed, with a tenth of its weights shifted and a tenth more connections
+     * @param innovations
+     * @param genes
+     * @param seed
+     * @return 
+     */
+    public static Genome buildRelative(InnovationRegistry innovations, int genes, long seed) {
+        Genome g = build(innovations, genes, seed);
+        SplittableRandom rand = new SplittableRandom(~seed);
+        for(int i = 0; i < genes / 10; ++i) g.mutateShiftWeight(g.getConnection(rand.nextInt(g.getConnectionCount())));
+        int target = genes + genes / 10;
+        while(g.getConnectionCount() < target) g.mutateAddConnection(rand.nextInt(inputs), inputs + rand.nextInt(outputs));
+        return g;
+    }
+    
+    /**
+     * Generates a speciated population of the given size, grown by the given number of mutation rounds
+     * @param size
+     * @param growth
+     * @return 
+     */
+    public static SpeciesManipulator population(int size, int growth) {
+        SpeciesManipulator sm = new SpeciesManipulator(10, 10, size, 0.9d);
+        sm.setSeed(seed);
+        sm.mutate(growth);
+        sm.respeciate();
+        score(sm);
+        return sm;
+    }
+    
+    /**
+     * Scores every Genome of the population on a fixed input
+     * @param sm 
+     */
+    public static void score(SpeciesManipulator sm) {
+        sm.setInputs(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        sm.evaluate(g -> {
+            g.calculate();
+            double score = 1;
+            for(double d : g.getOutputValues()) score += Math.abs(d);
+            g.setScore(score);
+        });
+    }
+    
+}
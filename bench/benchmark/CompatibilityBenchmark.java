@@ -0,0 +1,67 @@
+
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import neat.CompatibilityDistance;
+import neat.Genome;
+import neat.InnovationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the CompatibilityDistance kernel between a Genome and a close relative, and between two unrelated Genomes
+ * @author rewil
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CompatibilityBenchmark {
+    
+    @Param({"50", "500", "5000"})
+    public int genes;
+    
+    private Genome genome;
+    private Genome relative;
+    private Genome stranger;
+    
+    @Setup
+    public void build() {
+        InnovationRegistry innovations = new InnovationRegistry(BenchmarkGenomes.inputs + BenchmarkGenomes.outputs);
+        genome = BenchmarkGenomes.build(innovations, genes, BenchmarkGenomes.seed);
+        relative = BenchmarkGenomes.buildRelative(innovations, genes, BenchmarkGenomes.seed);
+        stranger = BenchmarkGenomes.build(innovations, genes, ~BenchmarkGenomes.seed);
+    }
+    
+    @Benchmark
+    public double betweenRelatives() {
+        return CompatibilityDistance.between(genome, relative);
+    }
+    
+    @Benchmark
+    public boolean withinRelatives() {
+        return CompatibilityDistance.within(genome, relative, 1.5d);
+    }
+    
+    @Benchmark
+    public double betweenStrangers() {
+        return CompatibilityDistance.between(genome, stranger);
+    }
+    
+    @Benchmark
+    public boolean withinStrangers() {
+        return CompatibilityDistance.within(genome, stranger, 1.5d);
+    }
+    
+}
@@ -0,0 +1,95 @@
+
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import neat.SpeciesManipulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures each phase of a generation, and a whole generation, across population sizes and Genome complexities
+ * Every invocation starts from a freshly built population, since each phase changes the population it runs on
+ * @author rewil
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class GenerationBenchmark {
+    
+    /**
+     * A scored, speciated population, ready for trim, respeciate, or a whole generation
+     */
+    @State(Scope.Thread)
+    public static class Scored {
+        
+        @Param({"150", "1000"})
+        public int size;
+        
+        @Param({"20", "200"})
+        public int growth; // Mutation rounds the population is grown by before measuring
+        
+        public SpeciesManipulator sm;
+        
+        @Setup(Level.Invocation)
+        public void build() {
+            sm = BenchmarkGenomes.population(size, growth);
+        }
+        
+    }
+    
+    /**
+     * A trimmed population, ready for refill
+     */
+    @State(Scope.Thread)
+    public static class Trimmed extends Scored {
+        
+        @Setup(Level.Invocation)
+        public void trim() {
+            sm.trim();
+        }
+        
+    }
+    
+    @Benchmark
+    public SpeciesManipulator trim(Scored population) {
+        population.sm.trim();
+        return population.sm;
+    }
+    
+    @Benchmark
+    public SpeciesManipulator refill(Trimmed population) {
+        population.sm.refill();
+        return population.sm;
+    }
+    
+    @Benchmark
+    public SpeciesManipulator mutate(Scored population) {
+        population.sm.mutate(50);
+        return population.sm;
+    }
+    
+    @Benchmark
+    public SpeciesManipulator respeciate(Scored population) {
+        population.sm.respeciate();
+        return population.sm;
+    }
+    
+    @Benchmark
+    public SpeciesManipulator process(Scored population) {
+        population.sm.process(50);
+        return population.sm;
+    }
+    
+}
@@ -0,0 +1,117 @@
+
+package benchmark;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import neat.Genome;
+import neat.InnovationRegistry;
+import neat.Species;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the operations run on single Genomes, at several Genome sizes
+ * @author rewil
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GenomeBenchmark {
+    
+    @Param({"50", "500", "5000"})
+    public int genes;
+    
+    private Genome genome;
+    private Genome relative;
+    private Genome mutated; // Rebuilt every iteration, mutate() grows it
+    private Genome child; // Bred into again and again by crossoverInto()
+    private Species species;
+    private final double[] inputs = new double[BenchmarkGenomes.inputs];
+    private final double[] outputs = new double[BenchmarkGenomes.outputs];
+    private static final int samples = 1024;
+    private final double[] batchInputs = new double[samples * BenchmarkGenomes.inputs];
+    private final double[] batchOutputs = new double[samples * BenchmarkGenomes.outputs];
+    
+    @Setup(Level.Trial)
+    public void build() {
+        InnovationRegistry innovations = new InnovationRegistry(BenchmarkGenomes.inputs + BenchmarkGenomes.outputs);
+        genome = BenchmarkGenomes.build(innovations, genes, BenchmarkGenomes.seed);
+        relative = BenchmarkGenomes.buildRelative(innovations, genes, BenchmarkGenomes.seed);
+        genome.setScore(2);
+        relative.setScore(1);
+        species = new Species(genome);
+        child = new Genome(innovations);
+        for(int i = 0; i < inputs.length; ++i) inputs[i] = i / (double) inputs.length;
+        genome.setInputs(inputs);
+        for(int i = 0; i < batchInputs.length; ++i) batchInputs[i] = (i % 97) / 97d;
+    }
+    
+    /**
+     * Rebuilds the Genome grown by mutate(), so every iteration starts from the same size
+     */
+    @Setup(Level.Iteration)
+    public void rebuildMutated() {
+        mutated = BenchmarkGenomes.build(new InnovationRegistry(BenchmarkGenomes.inputs + BenchmarkGenomes.outputs), genes, BenchmarkGenomes.seed);
+        mutated.setRandom(new SplittableRandom(BenchmarkGenomes.seed));
+    }
+    @Benchmark
+    public double[] calculate() {
+        genome.calculate();
+        return genome.getOutputValues(outputs);
+    }
+    
+    /**
+     * Measures 1024 samples in one batch, compare against 1024 times calculate()
+     * @return 
+     */
+    @Benchmark
+    @OperationsPerInvocation(samples)
+    public double[] calculateBatch() {
+        genome.calculateBatch(batchInputs, batchOutputs, samples);
+        return batchOutputs;
+    }
+    
+    @Benchmark
+    public void mutate() {
+        mutated.mutate();
+    }
+    
+    @Benchmark
+    public Genome crossover() {
+        return Genome.crossover(genome, relative);
+    }
+    /**
+     * Measures crossover into a reused child, compare against crossover() for the cost of a new Genome
+     * @return 
+     */
+    @Benchmark
+    public Genome crossoverInto() {
+        return Genome.crossover(genome, relative, child);
+    }
+    
+    @Benchmark
+    public boolean isCompatible() {
+        return species.isCompatible(relative);
+    }
+    
+    @Benchmark
+    public void distance(Blackhole bh) {
+        bh.consume(species.getDistance(relative));
+    }
+    
+}
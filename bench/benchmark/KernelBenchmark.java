@@ -0,0 +1,71 @@
+
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import neat.BatchKernel;
+import neat.Genome;
+import neat.InnovationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures calculateBatch throughput with the scalar kernel against the SIMD kernel, in samples per microsecond
+ * The vector runs need Java 16 or later, which the bench target passes add-modules jdk.incubator.vector to
+ * @author rewil
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+    
+    private static final int samples = 1024;
+    
+    @Param({"scalar", "vector"})
+    public String kernel;
+    
+    @Param({"50", "500", "5000"})
+    public int genes;
+    
+    private Genome genome;
+    private final double[] inputs = new double[samples * BenchmarkGenomes.inputs];
+    private final double[] outputs = new double[samples * BenchmarkGenomes.outputs];
+    private BatchKernel previous;
+    
+    @Setup
+    public void build() {
+        BatchKernel chosen = kernel.equals("vector") ? BatchKernel.vector() : BatchKernel.scalar();
+        if(chosen == null) throw new IllegalStateException("The SIMD kernel is not available, it needs Java 16+ and --add-modules jdk.incubator.vector");
+        previous = BatchKernel.getDefault();
+        BatchKernel.setDefault(chosen);
+        
+        genome = BenchmarkGenomes.build(new InnovationRegistry(BenchmarkGenomes.inputs + BenchmarkGenomes.outputs), genes, BenchmarkGenomes.seed);
+        for(int i = 0; i < inputs.length; ++i) inputs[i] = (i % 97) / 97d;
+    }
+    
+    @TearDown
+    public void restore() {
+        BatchKernel.setDefault(previous);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(samples)
+    public double[] calculateBatch() {
+        genome.calculateBatch(inputs, outputs, samples);
+        return outputs;
+    }
+    
+}
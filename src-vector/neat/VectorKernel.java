@@ -0,0 +1,40 @@
+
+package neat;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BatchKernel that multiplies a lane-width of samples at once with jdk.incubator.vector
+ * Compiled only on Java 16 or later, and loaded reflectively by Kernels, so nothing else depends on it
+ * Multiplies and adds separately rather than fusing them, so results match the scalar kernel exactly
+ * @author rewil
+ */
+public class VectorKernel implements BatchKernel {
+    
+    private static final VectorSpecies<Double> lanes = DoubleVector.SPECIES_PREFERRED;
+    
+    public VectorKernel() {
+        DoubleVector.zero(lanes); // Fails here, where Kernels can catch it, if the module is missing
+    }
+    
+    @Override
+    public void accumulate(double[] values, int stride, int count, int target, int[] sources, double[] weights, int from, int to) {
+        int t = target * stride;
+        int bound = lanes.loopBound(count);
+        int k = 0;
+        for(; k < bound; k += lanes.length()) { // Keeps a lane-width of the target's sums in a register across all its connections
+            DoubleVector sum = DoubleVector.fromArray(lanes, values, t + k);
+            for(int c = from; c < to; ++c) {
+                sum = sum.add(DoubleVector.fromArray(lanes, values, sources[c] * stride + k).mul(weights[c]));
+            }
+            sum.intoArray(values, t + k);
+        }
+        for(; k < count; ++k) {
+            double sum = values[t + k];
+            for(int c = from; c < to; ++c) sum += values[sources[c] * stride + k] * weights[c];
+            values[t + k] = sum;
+        }
+    }
+    
+}
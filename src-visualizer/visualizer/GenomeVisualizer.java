@@ -5,7 +5,6 @@
  */
 package visualizer;
 
-import java.io.File;
 import java.net.URL;
 import javafx.application.Application;
 import static javafx.application.Application.launch;
@@ -25,7 +24,7 @@ public class GenomeVisualizer extends Application {
     
     @Override
     public void start(Stage stage) throws Exception {
-        URL path = new File("src/visualizer/GenomeVisualizerFXML.fxml").toURI().toURL();
+        URL path = GenomeVisualizer.class.getResource("GenomeVisualizerFXML.fxml"); // Copied next to the classes, so this works from the jar too
         FXMLLoader loader = new FXMLLoader(path);
             Parent root = loader.load();
             
@@ -13,6 +13,7 @@ import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import neat.CompiledNetwork;
 import neat.GeneConnection;
 import neat.GeneNode;
 import neat.Genome;
@@ -31,7 +32,24 @@ public class GenomeVisualizerFXMLController implements Initializable, GenomeVisu
         gen.calculate();
             double size = Math.max(gen.getInputs().length, gen.getOutputs().length);
         yMod = (canvas.getHeight() / 100d) * (10/size);
-        gen.visualize(this);
+        draw(gen, this);
+    }
+    /**
+     * Draws every enabled GeneConnection of the given Genome, then every GeneNode with its last calculated value
+     * @param g
+     * @param controller 
+     */
+    public static void draw(Genome g, GenomeVisualizerInterface controller) {
+        CompiledNetwork network = g.getCompiledNetwork();
+        
+        for(GeneConnection c : g.getConnections()) {
+            if(c.isEnabled()) controller.drawConnection(c);
+        }
+        GeneNode[] all = g.getNodes();
+        int[] colors = g.getColors();
+        for(int i = 0; i < all.length; ++i) {
+            controller.drawNode(all[i], colors[i], network.getValue(i));
+        }
     }
     
     @FXML public void addConnection() {
@@ -65,17 +83,17 @@ public class GenomeVisualizerFXMLController implements Initializable, GenomeVisu
         private double xMod;
         private double yMod;
     @Override
-    public void drawNode(GeneNode g) {
+    public void drawNode(GeneNode g, int color, double value) {
         double nodeSize = 15;
         
         double nodeX = g.getX() * xMod;
         double nodeY = g.getY() * yMod;
         gc.setGlobalAlpha(0.5);
-        gc.setFill(g.getColor());
+        gc.setFill(Color.rgb(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF));
         gc.fillOval(nodeX - nodeSize/2, nodeY - nodeSize/2, nodeSize, nodeSize);
         gc.setFill(Color.BLACK);
         gc.setGlobalAlpha(1.0);
-        gc.fillText("" + g.getValue(), nodeX - nodeSize*1.5, nodeY);
+        gc.fillText("" + value, nodeX - nodeSize*1.5, nodeY);
         
     }
     @Override
@@ -13,6 +13,6 @@ import neat.GeneNode;
  * @author rewil
  */
 public interface GenomeVisualizerInterface {
-    public void drawNode(GeneNode n);
+    public void drawNode(GeneNode n, int color, double value);
     public void drawConnection(GeneConnection c);
 }
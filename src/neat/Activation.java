@@ -0,0 +1,115 @@
+
+package neat;
+
+/**
+ * Activation functions a GeneNode applies to the sum of its inputs
+ * CompiledNetwork dispatches on the ordinal with a switch, so nothing is called virtually per node
+ * Each function also has a fast form, using a lookup table with linear interpolation where the exact form needs exp or tanh
+ * @author rewil
+ */
+public enum Activation {
+    IDENTITY,
+    SIGMOID,
+    TANH,
+    RELU,
+    STEP,
+    GAUSSIAN;
+
+    private static final Activation[] all = values();
+
+    // Tables of sigmoid and Gaussian over [-range, range], sigmoid is within 1e-6 and Gaussian within 2e-5 of exact
+    private static final double range = 16d;
+    private static final int steps = 4096;
+    private static final double scale = steps / (2 * range);
+    private static final double[] sigmoidTable = new double[steps + 2];
+    private static final double[] gaussianTable = new double[steps + 2];
+    static {
+        for(int i = 0; i < sigmoidTable.length; ++i) {
+            double x = i / scale - range;
+            sigmoidTable[i] = sigmoid(x);
+            gaussianTable[i] = gaussian(x);
+        }
+    }
+
+    /**
+     * Returns the Activation with the given ordinal
+     * @param code
+     * @return
+     */
+    public static Activation of(int code) {
+        return all[code];
+    }
+
+    /**
+     * Applies this function exactly
+     * @param x
+     * @return
+     */
+    public double apply(double x) {
+        return apply(ordinal(), x, false);
+    }
+
+    /**
+     * Applies the function with the given ordinal, in its fast form if fast is true
+     * @param code
+     * @param x
+     * @param fast
+     * @return
+     */
+    static double apply(int code, double x, boolean fast) {
+        switch(code) {
+            case 0: return x;
+            case 1: return fast ? lookup(sigmoidTable, x, x > 0 ? 1 : 0) : sigmoid(x);
+            case 2: return fast ? 2 * lookup(sigmoidTable, 2 * x, x > 0 ? 1 : 0) - 1 : Math.tanh(x); // tanh(x) = 2 sigmoid(2x) - 1
+            case 3: return x > 0 ? x : 0;
+            case 4: return x > 0 ? 1 : 0;
+            default: return fast ? lookup(gaussianTable, x, 0) : gaussian(x);
+        }
+    }
+    /**
+     * Applies the function with the given ordinal to count values from index from onward
+     * Chooses the function once, so each case is a plain loop over the values
+     * @param code
+     * @param v
+     * @param from
+     * @param count
+     * @param fast
+     */
+    static void apply(int code, double[] v, int from, int count, boolean fast) {
+        int to = from + count;
+        switch(code) {
+            case 0:
+                return;
+            case 3:
+                for(int i = from; i < to; ++i) v[i] = v[i] > 0 ? v[i] : 0;
+                return;
+            case 4:
+                for(int i = from; i < to; ++i) v[i] = v[i] > 0 ? 1 : 0;
+                return;
+            default:
+                for(int i = from; i < to; ++i) v[i] = apply(code, v[i], fast);
+        }
+    }
+
+    private static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+    private static double gaussian(double x) {
+        return Math.exp(-x * x);
+    }
+    /**
+     * Reads a table by linear interpolation, returning outside for values beyond its range
+     * @param table
+     * @param x
+     * @param outside
+     * @return
+     */
+    private static double lookup(double[] table, double x, double outside) {
+        double at = (x + range) * scale;
+        if(!(at >= 0 && at < steps)) return x != x ? x : outside; // Keeps NaN as NaN
+        int i = (int) at;
+        double f = at - i;
+        return table[i] + (table[i + 1] - table[i]) * f;
+    }
+
+}
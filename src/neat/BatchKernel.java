@@ -0,0 +1,56 @@
+
+package neat;
+
+/**
+ * Inner loop of CompiledNetwork.calculateBatch, run over the connections into one node for one block of samples
+ * The scalar kernel always works; a SIMD kernel using jdk.incubator.vector is used instead when it can be loaded
+ * @author rewil
+ */
+public interface BatchKernel {
+    
+    /**
+     * Adds the value of each source times its weight into the target, for the first count samples of each node
+     * Node n holds its samples from values[n * stride] onward, and connections from index from up to index to are added in order
+     * @param values
+     * @param stride
+     * @param count
+     * @param target
+     * @param sources
+     * @param weights
+     * @param from
+     * @param to 
+     */
+    void accumulate(double[] values, int stride, int count, int target, int[] sources, double[] weights, int from, int to);
+    
+    /**
+     * Returns the kernel used by calculateBatch
+     * The SIMD kernel if it loaded, unless the system property neat.kernel is set to scalar
+     * @return 
+     */
+    static BatchKernel getDefault() {
+        return Kernels.current;
+    }
+    /**
+     * Sets the kernel used by calculateBatch from now on
+     * @param kernel 
+     */
+    static void setDefault(BatchKernel kernel) {
+        Kernels.current = kernel == null ? Kernels.scalar : kernel;
+    }
+    /**
+     * Returns the kernel that multiplies one sample at a time
+     * @return 
+     */
+    static BatchKernel scalar() {
+        return Kernels.scalar;
+    }
+    /**
+     * Returns the kernel that multiplies a lane-width of samples at a time, or null if it cannot run on this JVM
+     * Needs Java 16 or later, the classes built from src-vector, and --add-modules jdk.incubator.vector
+     * @return 
+     */
+    static BatchKernel vector() {
+        return Kernels.vector;
+    }
+    
+}
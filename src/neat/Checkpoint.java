@@ -0,0 +1,495 @@
+
+package neat;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary form of Genomes, Species, and the full state of a SpeciesManipulator
+ * Counts, nums and innovation numbers are written as variable length integers, and sorted numbers as the gap from the one before
+ * A SpeciesManipulator read back carries on exactly as the one written would have, as long as it was written between calls
+ * @author rewil
+ */
+public class Checkpoint {
+
+    private static final int magic = 0x4E454154; // "NEAT"
+    private static final byte version = 1;
+    private static final byte kindGenome = 1;
+    private static final byte kindSpecies = 2;
+    private static final byte kindManipulator = 3;
+    // Fewest bytes each record can take, so a count that could not fit in what is left is caught before anything is allocated for it
+    private static final int minGenome = 20;
+    private static final int minNode = 18;
+    private static final int minConnection = 12;
+    private static final int minSpecies = 10;
+
+    private Checkpoint() {}
+
+    // Files
+    //<editor-fold>
+    /**
+     * Writes the state of the given SpeciesManipulator to the given path
+     * Written to a temporary file first and moved into place, so the path always holds a whole checkpoint
+     * @param sm
+     * @param path
+     * @throws IOException
+     */
+    public static void write(SpeciesManipulator sm, Path path) throws IOException {
+        write(encode(sm), path);
+    }
+    /**
+     * Writes an encoded checkpoint to the given path, see write(SpeciesManipulator, Path)
+     * @param encoded
+     * @param path
+     * @throws IOException
+     */
+    public static void write(ByteBuffer encoded, Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer data = encoded.duplicate();
+        try(FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(data.hasRemaining()) channel.write(data);
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a SpeciesManipulator written by write(SpeciesManipulator, Path)
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static SpeciesManipulator read(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decodeManipulator(data);
+        }
+    }
+    //</editor-fold>
+
+    // Encoding
+    //<editor-fold>
+    /**
+     * Encodes a Genome on its own, ready to be read from position 0
+     * @param g
+     * @return
+     */
+    public static ByteBuffer encode(Genome g) {
+        Output out = header(kindGenome);
+        putGenome(out, g);
+        return out.finish();
+    }
+    /**
+     * Encodes a Species along with all of its members, ready to be read from position 0
+     * @param s
+     * @return
+     */
+    public static ByteBuffer encode(Species s) {
+        Output out = header(kindSpecies);
+        Genome[] members = s.getMembers();
+        out.putVarInt(members.length);
+        for(Genome g : members) putGenome(out, g);
+        putSpecies(out, s, indexOf(members));
+        return out.finish();
+    }
+    /**
+     * Encodes the full state of a SpeciesManipulator, ready to be read from position 0
+     * Must not be called while the SpeciesManipulator is processing, listeners and the pool are not saved
+     * @param sm
+     * @return
+     */
+    public static ByteBuffer encode(SpeciesManipulator sm) {
+        Output out = header(kindManipulator);
+        out.putVarInt(sm.getCountGenomes());
+        out.putDouble(sm.getPercentTrim());
+        out.putLong(sm.getSeed());
+        out.putVarInt(sm.getGeneration());
+        out.putVarLong(sm.getRandomUses());
+
+        InnovationRegistry innovations = sm.getInnovationRegistry();
+        out.putVarInt(innovations.getConnectionCount());
+        out.putVarInt(innovations.getNodeCount());
+        out.putVarInt(innovations.getGeneration());
+        out.putVarInt(innovations.getConnectionEntryCount());
+        innovations.visitConnections((key, value) -> {
+            out.putSignedVarInt((int) (key >> 32));
+            out.putSignedVarInt((int) key);
+            out.putVarInt(value);
+        });
+        out.putVarInt(innovations.getSplitEntryCount());
+        innovations.visitSplits((key, value) -> {
+            out.putVarInt((int) key);
+            out.putVarInt(value);
+        });
+
+        Genome[] genomes = sm.getGenomes();
+        out.putVarInt(genomes.length);
+        for(Genome g : genomes) putGenome(out, g);
+        Map<Genome,Integer> index = indexOf(genomes);
+        Species[] species = sm.getSpecies();
+        out.putVarInt(species.length);
+        for(Species s : species) putSpecies(out, s, index);
+        return out.finish();
+    }
+
+    private static Output header(byte kind) {
+        Output out = new Output(256);
+        out.putInt(magic);
+        out.put(version);
+        out.put(kind);
+        return out;
+    }
+    private static Map<Genome,Integer> indexOf(Genome[] genomes) {
+        Map<Genome,Integer> out = new IdentityHashMap<>();
+        for(int i = 0; i < genomes.length; ++i) out.put(genomes[i], i);
+        return out;
+    }
+
+    private static void putGenome(Output out, Genome g) {
+        out.putDouble(g.getScore());
+        out.putDouble(g.getMutability());
+        out.put((byte) ((g.isRecurrent() ? 1 : 0) | (g.isFastActivation() ? 2 : 0)));
+        Activation[] choices = g.getActivations();
+        out.putVarInt(choices.length);
+        for(Activation a : choices) out.put((byte) a.ordinal());
+
+        GeneNode[] nodes = g.getSortedNodes();
+        out.putVarInt(nodes.length);
+        int last = 0;
+        for(GeneNode n : nodes) {
+            out.putSignedVarInt(n.getNum() - last);
+            last = n.getNum();
+            int color = n.getColor();
+            out.put((byte) (n.getStage() | (color == 0 ? 0 : 4) | g.getActivation(n).ordinal() << 3)); // Black is the default, so it is not written
+            out.putDouble(n.getX());
+            out.putDouble(n.getY());
+            if(color != 0) out.putInt(color);
+            if(n.getStage() == 1) { // The connection it split, or -1 if it came from no split
+                out.putSignedVarInt(n.isSplit() ? n.getSplitIn() : -1);
+                if(n.isSplit()) out.putSignedVarInt(n.getSplitOut());
+            }
+        }
+
+        ConnectionHolder genes = g.getConnectionHolder();
+        out.putVarInt(genes.size);
+        last = 0;
+        for(int i = 0; i < genes.size; ++i) {
+            out.putSignedVarInt(genes.innovations[i] - last);
+            last = genes.innovations[i];
+            out.putSignedVarInt(genes.ins[i]);
+            out.putSignedVarInt(genes.outs[i]);
+            out.putDouble(genes.weights[i]);
+            out.put((byte) (genes.enabled[i] ? 1 : 0));
+        }
+    }
+
+    private static void putSpecies(Output out, Species s, Map<Genome,Integer> index) {
+        out.putVarInt(index.get(s.getMascot()));
+        out.putDouble(s.getFitness());
+        Genome[] members = s.getMembers();
+        out.putVarInt(members.length);
+        for(Genome g : members) out.putVarInt(index.get(g));
+    }
+
+    //</editor-fold>
+
+    // Decoding
+    //<editor-fold>
+    /**
+     * Decodes a Genome written by encode(Genome), taking innovation numbers from the given registry from then on
+     * @param data
+     * @param innovations
+     * @return
+     */
+    public static Genome decodeGenome(ByteBuffer data, InnovationRegistry innovations) {
+        try {
+            Input in = open(data, kindGenome);
+            return getGenome(in, innovations);
+        } catch(BufferUnderflowException e) {
+            throw new IllegalArgumentException("Checkpoint ends early", e);
+        }
+    }
+    /**
+     * Decodes a Species written by encode(Species), whose members take innovation numbers from the given registry from then on
+     * @param data
+     * @param innovations
+     * @return
+     */
+    public static Species decodeSpecies(ByteBuffer data, InnovationRegistry innovations) {
+        try {
+            Input in = open(data, kindSpecies);
+            Genome[] members = new Genome[in.getCount(minGenome)];
+            for(int i = 0; i < members.length; ++i) members[i] = getGenome(in, innovations);
+            return getSpecies(in, members);
+        } catch(BufferUnderflowException e) {
+            throw new IllegalArgumentException("Checkpoint ends early", e);
+        }
+    }
+    /**
+     * Decodes a SpeciesManipulator written by encode(SpeciesManipulator)
+     * The result has no listeners and evaluates on the calling thread until a pool is set
+     * @param data
+     * @return
+     */
+    public static SpeciesManipulator decodeManipulator(ByteBuffer data) {
+        try {
+            return getManipulator(open(data, kindManipulator));
+        } catch(BufferUnderflowException e) {
+            throw new IllegalArgumentException("Checkpoint ends early", e);
+        }
+    }
+
+    private static SpeciesManipulator getManipulator(Input in) {
+        int countGenomes = in.getNatural();
+        double percentTrim = in.getDouble();
+        long seed = in.getLong();
+        int generation = in.getNatural();
+        long randomUses = in.getVarLong();
+
+        InnovationRegistry innovations = new InnovationRegistry(in.getNatural(), in.getNatural(), in.getNatural());
+        for(int i = in.getCount(3); i > 0; --i) {
+            int from = in.getSignedVarInt();
+            int to = in.getSignedVarInt();
+            if(from < 0 || to < 0) throw new IllegalArgumentException("Corrupt checkpoint, connection from " + from + " to " + to);
+            innovations.restoreConnection((long) from << 32 | to, in.getNatural());
+        }
+        for(int i = in.getCount(2); i > 0; --i) {
+            long key = in.getNatural();
+            innovations.restoreSplit(key, in.getNatural());
+        }
+
+        Genome[] genomes = new Genome[in.getCount(minGenome)];
+        for(int i = 0; i < genomes.length; ++i) genomes[i] = getGenome(in, innovations);
+        ArrayList<Species> species = new ArrayList<>();
+        for(int i = in.getCount(minSpecies); i > 0; --i) species.add(getSpecies(in, genomes));
+
+        return new SpeciesManipulator(countGenomes, percentTrim, innovations, species, seed, generation, randomUses);
+    }
+
+    private static Activation activation(int code) {
+        if(code < 0 || code >= Activation.values().length) throw new IllegalArgumentException("Checkpoint holds unknown activation " + code);
+        return Activation.of(code);
+    }
+
+    private static Input open(ByteBuffer data, byte kind) {
+        Input in = new Input(data);
+        if(in.getInt() != magic) throw new IllegalArgumentException("Not a NEAT checkpoint");
+        byte v = in.get();
+        if(v != version) throw new IllegalArgumentException("Unsupported checkpoint version " + v);
+        byte k = in.get();
+        if(k != kind) throw new IllegalArgumentException("Checkpoint holds kind " + k + ", expected " + kind);
+        return in;
+    }
+
+    private static Genome getGenome(Input in, InnovationRegistry innovations) {
+        Genome g = new Genome(innovations);
+        g.setScore(in.getDouble());
+        g.setMutability(in.getDouble());
+        int flags = in.get();
+        g.setRecurrent((flags & 1) != 0);
+        g.setFastActivation((flags & 2) != 0);
+        Activation[] choices = new Activation[in.getCount(1)];
+        for(int i = 0; i < choices.length; ++i) choices[i] = activation(in.get());
+        g.setActivations(choices);
+
+        int count = in.getCount(minNode);
+        int num = 0;
+        for(int i = 0; i < count; ++i) {
+            int next = num + in.getSignedVarInt();
+            if(next < 0 || (i > 0 && next <= num)) throw new IllegalArgumentException("Corrupt checkpoint, GeneNode " + next + " after " + num);
+            num = next;
+            flags = in.get();
+            if((flags & 3) == 3) throw new IllegalArgumentException("Corrupt checkpoint, GeneNode " + num + " has stage 3");
+            double x = in.getDouble();
+            double y = in.getDouble();
+            int color = (flags & 4) != 0 ? in.getInt() : 0;
+            int splitIn = (flags & 3) == 1 ? in.getSignedVarInt() : -1;
+            int splitOut = splitIn >= 0 ? in.getSignedVarInt() : -1;
+            if(splitIn < -1 || (splitIn >= 0 && splitOut < 0)) throw new IllegalArgumentException("Corrupt checkpoint, GeneNode " + num + " splits (" + splitIn + ", " + splitOut + ")");
+            if(splitIn < 0) g.putNode(new GeneNode(num, flags & 3, x, y, color));
+            else g.putNode(new GeneNode(num, flags & 3, x, y, color, splitIn, splitOut));
+            g.setActivation(g.getNode(num), activation((flags & 0xFF) >>> 3));
+        }
+
+        count = in.getCount(minConnection);
+        g.getConnectionHolder().ensureCapacity(count);
+        int innovation = 0;
+        for(int i = 0; i < count; ++i) {
+            innovation += in.getSignedVarInt();
+            if(innovation < 0) throw new IllegalArgumentException("Corrupt checkpoint, innovation " + innovation);
+            GeneNode from = g.getNode(in.getSignedVarInt());
+            GeneNode to = g.getNode(in.getSignedVarInt());
+            if(from == null || to == null) throw new IllegalArgumentException("Checkpoint connects a GeneNode that does not exist");
+            GeneConnection c = new GeneConnection(from, to, in.getDouble(), innovation);
+            c.setEnabled(in.get() != 0);
+            g.putConnection(c);
+        }
+        return g;
+    }
+
+    private static Species getSpecies(Input in, Genome[] genomes) {
+        Genome mascot = genomes[in.getIndex(genomes.length)];
+        double totalFitness = in.getDouble();
+        Genome[] members = new Genome[in.getCount(1)];
+        for(int i = 0; i < members.length; ++i) members[i] = genomes[in.getIndex(genomes.length)];
+        return new Species(mascot, members, totalFitness);
+    }
+    //</editor-fold>
+
+  //----------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+
+    /**
+     * Growable buffer with variable length integers
+     */
+    private static class Output {
+
+        private ByteBuffer buffer;
+
+        public Output(int capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        private void ensure(int bytes) {
+            if(buffer.remaining() >= bytes) return;
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+
+        public void put(byte b) {
+            ensure(1);
+            buffer.put(b);
+        }
+        public void putInt(int i) {
+            ensure(4);
+            buffer.putInt(i);
+        }
+        public void putLong(long l) {
+            ensure(8);
+            buffer.putLong(l);
+        }
+        public void putDouble(double d) {
+            ensure(8);
+            buffer.putDouble(d);
+        }
+        /**
+         * Writes a non-negative int in 7 bit groups, low first, with the high bit marking that more follow
+         * @param i
+         */
+        public void putVarInt(int i) {
+            putVarLong(i & 0xFFFFFFFFL);
+        }
+        public void putVarLong(long l) {
+            ensure(10);
+            while((l & ~0x7FL) != 0) {
+                buffer.put((byte) ((l & 0x7F) | 0x80));
+                l >>>= 7;
+            }
+            buffer.put((byte) l);
+        }
+        /**
+         * Writes an int that may be negative, zig-zag encoded so small negatives stay short
+         * @param i
+         */
+        public void putSignedVarInt(int i) {
+            putVarInt((i << 1) ^ (i >> 31));
+        }
+
+        public ByteBuffer finish() {
+            buffer.flip();
+            return buffer;
+        }
+
+    }
+
+    /**
+     * Reader for the buffers written by Output
+     */
+    private static class Input {
+
+        private final ByteBuffer buffer;
+
+        public Input(ByteBuffer buffer) {
+            this.buffer = buffer.duplicate();
+        }
+
+        public byte get() {
+            return buffer.get();
+        }
+        public int getInt() {
+            return buffer.getInt();
+        }
+        public long getLong() {
+            return buffer.getLong();
+        }
+        public double getDouble() {
+            return buffer.getDouble();
+        }
+        public int getVarInt() {
+            long l = getVarLong();
+            if(l > 0xFFFFFFFFL) throw new IllegalArgumentException("Corrupt checkpoint");
+            return (int) l;
+        }
+        public long getVarLong() {
+            long out = 0;
+            for(int shift = 0; shift < 64; shift += 7) {
+                byte b = get();
+                out |= (long) (b & 0x7F) << shift;
+                if(b >= 0) return out;
+            }
+            throw new IllegalArgumentException("Corrupt checkpoint");
+        }
+        public int getSignedVarInt() {
+            int i = getVarInt();
+            return (i >>> 1) ^ -(i & 1);
+        }
+        /**
+         * Reads a var int written from a non-negative int
+         * @return
+         */
+        public int getNatural() {
+            int i = getVarInt();
+            if(i < 0) throw new IllegalArgumentException("Corrupt checkpoint, negative value " + i);
+            return i;
+        }
+        /**
+         * Reads the count of records that follow, each taking at least minBytes
+         * @param minBytes
+         * @return
+         */
+        public int getCount(int minBytes) {
+            int count = getNatural();
+            if(count > buffer.remaining() / minBytes) throw new IllegalArgumentException("Corrupt checkpoint, " + count + " records cannot fit in " + buffer.remaining() + " bytes");
+            return count;
+        }
+        /**
+         * Reads an index into an array of the given length
+         * @param length
+         * @return
+         */
+        public int getIndex(int length) {
+            int i = getNatural();
+            if(i >= length) throw new IllegalArgumentException("Corrupt checkpoint, index " + i + " out of " + length);
+            return i;
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+
+package neat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checkpoints a SpeciesManipulator every few generations without holding up the generation loop
+ * The state is encoded in memory on the thread running process(), then written to disk on a background thread
+ * If the disk falls behind, a checkpoint still waiting to be written is replaced by the newer one
+ * @author rewil
+ */
+public class Checkpointer implements GenerationListener, Closeable {
+
+    private static final String prefix = "generation-";
+    private static final String suffix = ".neat";
+
+    private final SpeciesManipulator sm;
+    private final Path directory;
+    private final int interval; // Generations between checkpoints
+    private final int keep; // Newest checkpoints kept on disk, older ones are deleted
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "NEAT checkpoint writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicReference<Snapshot> pending = new AtomicReference<>(); // Encoded but not yet written
+    private volatile IOException failure = null; // First failed write, thrown from close()
+
+    /**
+     * Generates a Checkpointer that writes the given SpeciesManipulator into the given directory every interval generations
+     * Attaches itself to the SpeciesManipulator as a listener
+     * @param sm
+     * @param directory
+     * @param interval
+     * @param keep
+     * @throws IOException
+     */
+    public Checkpointer(SpeciesManipulator sm, Path directory, int interval, int keep) throws IOException {
+        this.sm = sm;
+        this.directory = Files.createDirectories(directory);
+        this.interval = Math.max(1, interval);
+        this.keep = Math.max(1, keep);
+        sm.addListener(this);
+    }
+
+    @Override
+    public void generationProcessed(GenerationMetrics metrics) {
+        if(sm.getGeneration() % interval == 0) checkpoint();
+    }
+    @Override
+    public boolean needsMetrics() {
+        return false;
+    }
+
+    /**
+     * Encodes the SpeciesManipulator now and queues it to be written
+     */
+    public void checkpoint() {
+        Snapshot previous = pending.getAndSet(new Snapshot(sm.getGeneration(), Checkpoint.encode(sm)));
+        if(previous == null) writer.execute(this::writePending); // Otherwise the queued write picks up the newer snapshot
+    }
+
+    private void writePending() {
+        Snapshot s = pending.getAndSet(null);
+        if(s == null) return;
+        try {
+            Checkpoint.write(s.data, directory.resolve(prefix + s.generation + suffix));
+            ArrayList<Path> all = list(directory);
+            for(int i = 0; i < all.size() - keep; ++i) Files.deleteIfExists(all.get(i));
+        } catch(IOException e) {
+            if(failure == null) failure = e;
+        }
+    }
+
+    /**
+     * Returns the newest checkpoint in the given directory, or null if there is none
+     * @param directory
+     * @return
+     * @throws IOException
+     */
+    public static Path latest(Path directory) throws IOException {
+        if(!Files.isDirectory(directory)) return null;
+        ArrayList<Path> all = list(directory);
+        return all.isEmpty() ? null : all.get(all.size() - 1);
+    }
+    /**
+     * Returns the checkpoints in the given directory, oldest generation first
+     * @param directory
+     * @return
+     * @throws IOException
+     */
+    private static ArrayList<Path> list(Path directory) throws IOException {
+        ArrayList<Path> out = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for(Path p : stream) out.add(p);
+        }
+        Collections.sort(out, (a, b) -> Integer.compare(generationOf(a), generationOf(b)));
+        return out;
+    }
+    private static int generationOf(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Detaches from the SpeciesManipulator and waits for the last checkpoint to be written
+     * @throws IOException if any checkpoint failed to be written
+     */
+    @Override
+    public void close() throws IOException {
+        sm.removeListener(this);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(failure != null) throw failure;
+    }
+
+  //----------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+
+    private static class Snapshot {
+
+        private final int generation;
+        private final ByteBuffer data;
+
+        public Snapshot(int generation, ByteBuffer data) {
+            this.generation = generation;
+            this.data = data;
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+
+package neat;
+
+/**
+ * Computes the compatibility distance between two Genomes, used to sort Genomes into Species
+ * Works directly on the innovation-sorted gene arrays of each Genome in one pass, without allocating
+ * @author rewil
+ */
+public class CompatibilityDistance {
+
+    private static final double excessWeight = 1d; // Sets weight of Excess Connections
+    private static final double disjointWeight = 1d; // Sets weight of Disjoint Connections
+    private static final double weightDiffWeight = 1d; // Sets weight of Average Weight Differential
+    private static final int minSize = 20; // Genomes smaller than this are normalized as if they were this size
+    private static final double boundSlack = 1e-9; // Bounds must clear the threshold by this much, so rounding can never reject a Genome between() would accept
+
+    /**
+     * Returns the compatibility distance between two Genomes
+     * Distance is the weighted count of Excess and Disjoint connections over the size of the larger Genome, plus the weighted average weight difference of Matching connections
+     * @param a
+     * @param b
+     * @return
+     */
+    public static double between(Genome a, Genome b) {
+        ConnectionHolder ga = a.getConnectionHolder();
+        ConnectionHolder gb = b.getConnectionHolder();
+        return between(ga.innovations, ga.weights, ga.size, gb.innovations, gb.weights, gb.size);
+    }
+
+    /**
+     * Returns the compatibility distance between two sets of genes, each sorted by ascending innovation number
+     * Only the first sizeA and sizeB entries of the arrays are read
+     * @param innovationsA
+     * @param weightsA
+     * @param sizeA
+     * @param innovationsB
+     * @param weightsB
+     * @param sizeB
+     * @return
+     */
+    public static double between(int[] innovationsA, double[] weightsA, int sizeA, int[] innovationsB, double[] weightsB, int sizeB) {
+        int disjoint = 0;
+        int matching = 0;
+        double weightDiff = 0;
+
+        int a = 0, b = 0;
+        while(a < sizeA && b < sizeB) {
+            int innovationA = innovationsA[a];
+            int innovationB = innovationsB[b];
+            if(innovationA == innovationB) {
+                weightDiff += Math.abs(weightsA[a++] - weightsB[b++]);
+                ++matching;
+            } else if(innovationA < innovationB) {
+                ++a;
+                ++disjoint;
+            } else {
+                ++b;
+                ++disjoint;
+            }
+        }
+        int excess = (sizeA - a) + (sizeB - b); // Whatever is left of either Genome is past the end of the other
+
+        return distance(excess, disjoint, matching, weightDiff, sizeA, sizeB);
+    }
+
+    /**
+     * Returns if the compatibility distance between two Genomes is below the given threshold
+     * Gives the same answer as between(a, b) < threshold, but rejects early where it can
+     * @param a
+     * @param b
+     * @param threshold
+     * @return
+     */
+    public static boolean within(Genome a, Genome b, double threshold) {
+        ConnectionHolder ga = a.getConnectionHolder();
+        ConnectionHolder gb = b.getConnectionHolder();
+        return within(ga.innovations, ga.weights, ga.size, gb.innovations, gb.weights, gb.size, threshold);
+    }
+
+    /**
+     * Returns if the compatibility distance between two sets of innovation-sorted genes is below the given threshold
+     * Rejects without a full pass when the difference in gene counts alone reaches the threshold, 
+     * computes the distance directly when the innovation ranges do not overlap, 
+     * and otherwise stops the pass as soon as the Disjoint connections found reach the threshold
+     * @param innovationsA
+     * @param weightsA
+     * @param sizeA
+     * @param innovationsB
+     * @param weightsB
+     * @param sizeB
+     * @param threshold
+     * @return
+     */
+    public static boolean within(int[] innovationsA, double[] weightsA, int sizeA, int[] innovationsB, double[] weightsB, int sizeB, double threshold) {
+        if(!mayBeWithin(sizeA, sizeB, threshold)) return false;
+        if(sizeA > 0 && sizeB > 0) {
+            if(innovationsA[sizeA - 1] < innovationsB[0]) return distance(sizeB, sizeA, 0, 0, sizeA, sizeB) < threshold; // All of A is Disjoint, all of B is Excess
+            if(innovationsB[sizeB - 1] < innovationsA[0]) return distance(sizeA, sizeB, 0, 0, sizeA, sizeB) < threshold;
+        }
+
+        int size = Math.max(Math.max(sizeA, sizeB), minSize);
+        int disjointLimit = (int) Math.ceil((threshold + boundSlack) * size / disjointWeight); // Disjoint count that alone reaches the threshold
+        int disjoint = 0;
+        int matching = 0;
+        double weightDiff = 0;
+
+        int a = 0, b = 0;
+        while(a < sizeA && b < sizeB) {
+            int innovationA = innovationsA[a];
+            int innovationB = innovationsB[b];
+            if(innovationA == innovationB) {
+                weightDiff += Math.abs(weightsA[a++] - weightsB[b++]);
+                ++matching;
+                continue;
+            } else if(innovationA < innovationB) {
+                ++a;
+            } else {
+                ++b;
+            }
+            if(++disjoint >= disjointLimit) return false;
+        }
+        int excess = (sizeA - a) + (sizeB - b);
+
+        return distance(excess, disjoint, matching, weightDiff, sizeA, sizeB) < threshold;
+    }
+
+    /**
+     * Returns false if Genomes with the given numbers of genes are certainly not within the given threshold
+     * At least the difference in gene counts must be Excess or Disjoint, which bounds the distance from below
+     * @param sizeA
+     * @param sizeB
+     * @param threshold
+     * @return
+     */
+    public static boolean mayBeWithin(int sizeA, int sizeB, double threshold) {
+        int size = Math.max(Math.max(sizeA, sizeB), minSize);
+        return Math.min(excessWeight, disjointWeight) * Math.abs(sizeA - sizeB) / size < threshold + boundSlack;
+    }
+
+    /**
+     * Combines counts of genes into a compatibility distance
+     * With no Matching connections the average weight difference counts as 0
+     * @param excess
+     * @param disjoint
+     * @param matching
+     * @param weightDiff
+     * @param sizeA
+     * @param sizeB
+     * @return
+     */
+    static double distance(int excess, int disjoint, int matching, double weightDiff, int sizeA, int sizeB) {
+        int size = Math.max(Math.max(sizeA, sizeB), minSize);
+        double out = 0;
+            out += (excessWeight * excess) / size; // Add weighted value of Excess connections
+            out += (disjointWeight * disjoint) / size; // Add weighted value of Disjoint connections
+            if(matching > 0) out += weightDiffWeight * (weightDiff / matching); // Add weighted value of Average Weight Differential
+        return out;
+    }
+
+}
@@ -0,0 +1,358 @@
+
+package neat;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * Flat, topologically sorted form of a Genome used for evaluation
+ * Built once from a Genome, and rebuilt by the Genome only after its structure or weights change
+ * @author rewil
+ */
+public class CompiledNetwork {
+
+    private final double[] values; // Value of each node in ascending num order, the only per-network evaluation state besides batch and carry
+
+    private final int[] inputs; // Indexes of Input Nodes in ascending num order
+    private final int[] outputs; // Indexes of Output Nodes in ascending num order
+    private final int[] resets; // Indexes of every non-Input Node, zeroed before each pass
+
+    private final int[] order; // Indexes of every non-Input Node, in the order they are calculated
+    private final int[] ends; // End of the forward connections into each node of order, they start where the previous node's end
+    private final int[] activations; // Activation ordinal of each node of order
+    private final boolean fast; // Use the fast forms of activation functions
+    
+    private final int[] sources; // Enabled forward connections, grouped by target in the order of order
+    private final double[] weights;
+    
+    private final int[] loopSources; // Enabled connections looping back to a node calculated no later than their source
+    private final int[] loopTargets;
+    private final double[] loopWeights;
+    private final double[] carry; // Value each looping connection carries from one step() into the next
+    
+    private static final int block = 64; // Samples evaluated together by calculateBatch
+    private double[] batch = null; // Node-major values of one block of samples, made on first use of calculateBatch
+
+    /**
+     * Compiles the given Genome
+     * Input values are carried over from previous if it is not null, otherwise they start at 1
+     * @param genome
+     * @param previous
+     */
+    public CompiledNetwork(Genome genome, CompiledNetwork previous) {
+        GeneNode[] nodes = genome.getSortedNodes();
+        values = new double[nodes.length];
+
+        int[] nums = new int[nodes.length]; // Ascending, so the index of a num is found by binary search rather than a table as large as the registry
+        int countInputs = 0, countOutputs = 0;
+        for(int i = 0; i < nodes.length; ++i) {
+            nums[i] = nodes[i].getNum();
+            if(nodes[i].getStage() == 0) ++countInputs;
+            if(nodes[i].getStage() == 2) ++countOutputs;
+        }
+        inputs = new int[countInputs];
+        outputs = new int[countOutputs];
+        resets = new int[nodes.length - countInputs];
+        int in = 0, out = 0, reset = 0;
+        for(int i = 0; i < nodes.length; ++i) {
+            if(nodes[i].getStage() == 0) {
+                values[i] = previous != null && in < previous.inputs.length ? previous.values[previous.inputs[in]] : 1;
+                inputs[in++] = i;
+                continue;
+            }
+            if(nodes[i].getStage() == 2) outputs[out++] = i;
+            resets[reset++] = i; // Outputs are reset along with Hidden Nodes
+        }
+
+        // Gather enabled connections, ignoring any that lead into an Input Node as GeneNode does
+        ConnectionHolder genes = genome.getConnectionHolder();
+        int count = 0;
+        int[] from = new int[genes.size()];
+        int[] to = new int[genes.size()];
+        double[] weight = new double[genes.size()];
+        int[] indegree = new int[nodes.length];
+        for(int g = 0; g < genes.size(); ++g) {
+            if(!genes.enabled[g]) continue;
+            int target = Arrays.binarySearch(nums, genes.outs[g]);
+            if(nodes[target].getStage() == 0) continue;
+            from[count] = Arrays.binarySearch(nums, genes.ins[g]);
+            to[count] = target;
+            weight[count] = genes.weights[g];
+            indegree[to[count]]++;
+            ++count;
+        }
+        int[] rank = rankNodes(from, to, indegree);
+
+        // Connections into a node ranked no later than their source close a loop, and are kept apart for step()
+        int loops = 0;
+        for(int c = 0; c < count; ++c) if(rank[from[c]] >= rank[to[c]]) ++loops;
+        loopSources = new int[loops];
+        loopTargets = new int[loops];
+        loopWeights = new double[loops];
+        carry = new double[loops];
+        int forward = count - loops;
+
+        // Counting sort of forward connections by rank of their target
+        int[] start = new int[nodes.length + 1];
+        for(int c = 0; c < count; ++c) if(rank[from[c]] < rank[to[c]]) start[rank[to[c]] + 1]++;
+        for(int r = 0; r < nodes.length; ++r) start[r + 1] += start[r];
+        sources = new int[forward];
+        weights = new double[forward];
+        for(int c = 0, l = 0; c < count; ++c) {
+            if(rank[from[c]] >= rank[to[c]]) {
+                loopSources[l] = from[c];
+                loopTargets[l] = to[c];
+                loopWeights[l++] = weight[c];
+                continue;
+            }
+            int slot = start[rank[to[c]]]++;
+            sources[slot] = from[c];
+            weights[slot] = weight[c];
+        }
+
+        // Every non-Input Node in rank order, with the end of its group of connections, which start now holds
+        int[] byRank = new int[nodes.length];
+        for(int i = 0; i < nodes.length; ++i) byRank[rank[i]] = i;
+        order = new int[resets.length];
+        ends = new int[resets.length];
+        activations = new int[resets.length];
+        for(int r = 0, o = 0; r < nodes.length; ++r) {
+            int i = byRank[r];
+            if(nodes[i].getStage() == 0) continue;
+            order[o] = i;
+            ends[o] = start[r];
+            activations[o++] = genome.getActivation(nodes[i]).ordinal();
+        }
+        fast = genome.isFastActivation();
+        if(previous != null) batch = previous.batch; // The Genome is done with previous, so its scratch block is taken over rather than made again
+    }
+
+    /**
+     * Returns the topological rank of every node, ordering nodes by a depth first search in reverse finishing order
+     * Searches start from nodes nothing leads into, then from any node still unranked in index order
+     * A connection is only ranked backwards if it closes a loop in the search, so exactly those connections loop back
+     * @param from
+     * @param to
+     * @param indegree
+     * @return
+     */
+    private int[] rankNodes(int[] from, int[] to, int[] indegree) {
+        int n = indegree.length;
+        // Adjacency of outgoing connections in compressed form
+        int[] first = new int[n + 1];
+        for(int f : from) first[f + 1]++;
+        for(int i = 0; i < n; ++i) first[i + 1] += first[i];
+        int[] fill = first.clone();
+        int[] outgoing = new int[from.length];
+        for(int c = 0; c < from.length; ++c) outgoing[fill[from[c]]++] = to[c];
+
+        int[] rank = new int[n];
+        Arrays.fill(rank, -1);
+        boolean[] seen = new boolean[n];
+        int[] stack = new int[n];
+        int[] edge = new int[n]; // Next outgoing connection to follow from each node on the stack
+        int next = n; // Ranks are handed out from the end as nodes finish
+        for(int pass = 0; pass < 2; ++pass) {
+            for(int root = 0; root < n; ++root) {
+                if(seen[root] || (pass == 0 && indegree[root] != 0)) continue;
+                int depth = 0;
+                stack[depth++] = root;
+                seen[root] = true;
+                edge[root] = first[root];
+                while(depth > 0) {
+                    int i = stack[depth - 1];
+                    if(edge[i] < first[i + 1]) {
+                        int t = outgoing[edge[i]++];
+                        if(seen[t]) continue;
+                        seen[t] = true;
+                        edge[t] = first[t];
+                        stack[depth++] = t;
+                    } else {
+                        rank[i] = --next;
+                        --depth;
+                    }
+                }
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Calculates the value of every node in a single pass over the connections
+     * Connections that loop back add nothing, see step() for networks that keep state
+     */
+    public void calculate() {
+        propagate(false);
+    }
+    /**
+     * Calculates one time step of the network in a single pass over the connections
+     * Connections that loop back carry the value their source had at the end of the previous step, 
+     * so state is kept between calls without recursion or allocation
+     */
+    public void step() {
+        for(int l = 0; l < loopSources.length; ++l) carry[l] = values[loopSources[l]] * loopWeights[l];
+        for(int i : resets) values[i] = 0;
+        for(int l = 0; l < loopTargets.length; ++l) values[loopTargets[l]] += carry[l];
+        propagate(true);
+    }
+    /**
+     * Sums the forward connections into each node in order, then applies its activation function
+     * @param carried if the sums start from the values carried into the nodes, rather than 0
+     */
+    private void propagate(boolean carried) {
+        int c = 0;
+        for(int o = 0; o < order.length; ++o) {
+            int t = order[o];
+            double sum = carried ? values[t] : 0;
+            for(int end = ends[o]; c < end; ++c) sum += values[sources[c]] * weights[c];
+            values[t] = Activation.apply(activations[o], sum, fast);
+        }
+    }
+    /**
+     * Clears the state kept between calls of step(), leaving the input values as they are
+     */
+    public void resetState() {
+        for(int i : resets) values[i] = 0;
+    }
+    /**
+     * Returns if any enabled connection loops back, so step() may differ from calculate()
+     * @return 
+     */
+    public boolean isRecurrent() {
+        return loopSources.length > 0;
+    }
+
+    /**
+     * Calculates the outputs of many samples in one sweep over the connections per block of samples
+     * Samples are independent, so as with calculate() connections that loop back add nothing
+     * Sample i reads its inputs from in[inOffset + i * getInputCount()] onward, and writes its outputs to out[outOffset + i * getOutputCount()] onward
+     * Does not change the values seen by calculate() and getOutputValues()
+     * @param in
+     * @param inOffset
+     * @param out
+     * @param outOffset
+     * @param samples 
+     */
+    public void calculateBatch(double[] in, int inOffset, double[] out, int outOffset, int samples) {
+        checkBatch(in.length - inOffset, out.length - outOffset, samples);
+        double[] v = getBatch();
+        for(int first = 0; first < samples; first += block) {
+            int count = Math.min(block, samples - first);
+            for(int i = 0; i < inputs.length; ++i) {
+                int row = inputs[i] * block, from = inOffset + first * inputs.length + i;
+                for(int k = 0; k < count; ++k) v[row + k] = in[from + k * inputs.length];
+            }
+            calculateBlock(v, count);
+            for(int o = 0; o < outputs.length; ++o) {
+                int row = outputs[o] * block, to = outOffset + first * outputs.length + o;
+                for(int k = 0; k < count; ++k) out[to + k * outputs.length] = v[row + k];
+            }
+        }
+    }
+    /**
+     * Calculates the outputs of many samples, following the layout of calculateBatch(double[], int, double[], int, int)
+     * Reads from the position of in and writes from the position of out, without moving either position
+     * @param in
+     * @param out
+     * @param samples 
+     */
+    public void calculateBatch(DoubleBuffer in, DoubleBuffer out, int samples) {
+        checkBatch(in.remaining(), out.remaining(), samples);
+        if(in.hasArray() && out.hasArray()) {
+            calculateBatch(in.array(), in.arrayOffset() + in.position(), out.array(), out.arrayOffset() + out.position(), samples);
+            return;
+        }
+        double[] v = getBatch();
+        int inStart = in.position(), outStart = out.position();
+        for(int first = 0; first < samples; first += block) {
+            int count = Math.min(block, samples - first);
+            for(int i = 0; i < inputs.length; ++i) {
+                int row = inputs[i] * block, from = inStart + first * inputs.length + i;
+                for(int k = 0; k < count; ++k) v[row + k] = in.get(from + k * inputs.length);
+            }
+            calculateBlock(v, count);
+            for(int o = 0; o < outputs.length; ++o) {
+                int row = outputs[o] * block, to = outStart + first * outputs.length + o;
+                for(int k = 0; k < count; ++k) out.put(to + k * outputs.length, v[row + k]);
+            }
+        }
+    }
+    
+    /**
+     * Runs every connection over the first count samples of a block, each node holding its samples side by side
+     * The sums are done by the current BatchKernel, one node at a time, and activated before any node reads them
+     * @param v
+     * @param count 
+     */
+    private void calculateBlock(double[] v, int count) {
+        BatchKernel kernel = BatchKernel.getDefault();
+        int c = 0;
+        for(int o = 0; o < order.length; ++o) {
+            int row = order[o] * block;
+            Arrays.fill(v, row, row + count, 0);
+            kernel.accumulate(v, block, count, order[o], sources, weights, c, ends[o]);
+            Activation.apply(activations[o], v, row, count, fast);
+            c = ends[o];
+        }
+    }
+    private double[] getBatch() {
+        if(batch == null || batch.length < values.length * block) batch = new double[values.length * block];
+        return batch;
+    }
+    private void checkBatch(int inLength, int outLength, int samples) {
+        if(samples < 0) throw new IllegalArgumentException("Negative sample count " + samples);
+        if(inLength < (long) samples * inputs.length) throw new IllegalArgumentException("Input holds fewer than " + samples + " samples of " + inputs.length + " inputs");
+        if(outLength < (long) samples * outputs.length) throw new IllegalArgumentException("Output holds fewer than " + samples + " samples of " + outputs.length + " outputs");
+    }
+    
+    /**
+     * Set input values to given double array
+     * If given array is larger than number of inputs, then trailing values will be ignored
+     * If given array is smaller than number of inputs, then remaining inputs will be set to 0
+     * @param in
+     */
+    public void setInputs(double... in) {
+        int i;
+        for(i = 0; i < inputs.length && i < in.length; ++i) {
+            values[inputs[i]] = in[i];
+        } while(i < inputs.length) values[inputs[i++]] = 0;
+    }
+    /**
+     * Set input values to given int array, following the same rules as setInputs(double...)
+     * @param in
+     */
+    public void setInputs(int... in) {
+        int i;
+        for(i = 0; i < inputs.length && i < in.length; ++i) {
+            values[inputs[i]] = in[i];
+        } while(i < inputs.length) values[inputs[i++]] = 0;
+    }
+
+    /**
+     * Copies the values of the Output Nodes into the given array, which must hold at least getOutputCount() values
+     * Does not run calculate, should be run before calling this
+     * @param out
+     * @return the given array
+     */
+    public double[] getOutputValues(double[] out) {
+        for(int i = 0; i < outputs.length; ++i) out[i] = values[outputs[i]];
+        return out;
+    }
+
+    public int getInputCount() {
+        return inputs.length;
+    }
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Returns the last calculated value of the node at the given index, in the order of Genome.getNodes()
+     * @param index
+     * @return 
+     */
+    public double getValue(int index) {
+        return values[index];
+    }
+
+}
@@ -0,0 +1,301 @@
+
+package neat;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Holds the GeneConnections of a Genome, sorted by innovation number
+ * Each gene is stored across parallel primitive arrays, so the hot paths never touch GeneConnection objects
+ * A stored GeneConnection reads and writes its weight and enabled state straight from these arrays
+ * @author rewil
+ */
+class ConnectionHolder {
+
+    private final Genome genome;
+
+    // Genes in ascending innovation order, all arrays share one index
+    int size = 0;
+    int[] innovations = new int[8];
+    int[] ins = new int[8]; // Num of In node
+    int[] outs = new int[8]; // Num of Out node
+    double[] weights = new double[8];
+    boolean[] enabled = new boolean[8];
+    GeneConnection[] genes = new GeneConnection[8];
+
+    private int enabledCount = 0;
+    long hash = 0; // Sum of geneHash() over enabled genes, kept up to date as genes change
+    private final PairIndex index = new PairIndex(); // (in, out) to innovation, for duplicate checks
+
+    public ConnectionHolder(Genome genome) {
+        this.genome = genome;
+    }
+
+    /**
+     * Puts a connection in the holder, returns false if already existing
+     * @param gc
+     * @return
+     */
+    public boolean putConnection(GeneConnection gc) {
+        int in = gc.getIn().getNum();
+        int out = gc.getOut().getNum();
+        if(index.get(in, out) != PairIndex.MISSING) return false;
+
+        ensureCapacity(size + 1);
+        int innovation = gc.getInnovation();
+        int at = size;
+        if(size > 0 && innovations[size - 1] > innovation) { // Innovation is older than the newest stored, so make room for it
+            int found = search(innovation);
+            at = found >= 0 ? found : -found - 1;
+            shift(at, 1);
+        }
+        innovations[at] = innovation;
+        ins[at] = in;
+        outs[at] = out;
+        weights[at] = gc.getWeight();
+        enabled[at] = gc.isEnabled();
+        genes[at] = gc;
+        if(enabled[at]) {
+            ++enabledCount;
+            hash += geneHash(at);
+        }
+        ++size;
+        index.put(in, out, innovation);
+        gc.attach(this, at);
+        genome.invalidate();
+        return true;
+    }
+
+    /**
+     * Moves every gene from index at onward by the given distance, keeping the slots of their GeneConnections up to date
+     * @param at
+     * @param by
+     */
+    private void shift(int at, int by) {
+        int count = size - at;
+        System.arraycopy(innovations, at, innovations, at + by, count);
+        System.arraycopy(ins, at, ins, at + by, count);
+        System.arraycopy(outs, at, outs, at + by, count);
+        System.arraycopy(weights, at, weights, at + by, count);
+        System.arraycopy(enabled, at, enabled, at + by, count);
+        System.arraycopy(genes, at, genes, at + by, count);
+        for(int i = at + by; i < size + by; ++i) genes[i].moveTo(i);
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of genes
+     * @param capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity <= innovations.length) return;
+        int grown = Math.max(capacity, innovations.length * 2);
+        innovations = Arrays.copyOf(innovations, grown);
+        ins = Arrays.copyOf(ins, grown);
+        outs = Arrays.copyOf(outs, grown);
+        weights = Arrays.copyOf(weights, grown);
+        enabled = Arrays.copyOf(enabled, grown);
+        genes = Arrays.copyOf(genes, grown);
+    }
+
+    /**
+     * Returns the index of the given innovation, or (-(insertion point) - 1) if it is not stored
+     * @param innovation
+     * @return
+     */
+    public int search(int innovation) {
+        return Arrays.binarySearch(innovations, 0, size, innovation);
+    }
+
+    /**
+     * Returns a GeneConnection with the indicated In and Out nodes, or null if none exists
+     * @param in
+     * @param out
+     * @return
+     */
+    public GeneConnection getConnection(int in, int out) {
+        int innovation = index.get(in, out);
+        if(innovation == PairIndex.MISSING) return null;
+        return genes[search(innovation)];
+    }
+
+    /**
+     * Returns the GeneConnection at the given index in innovation order
+     * @param i
+     * @return
+     */
+    public GeneConnection get(int i) {
+        return genes[i];
+    }
+
+    public int size() {
+        return size;
+    }
+    public int getEnabledCount() {
+        return enabledCount;
+    }
+
+    public void setWeight(int i, double weight) {
+        if(enabled[i]) hash -= geneHash(i);
+        weights[i] = weight;
+        if(enabled[i]) hash += geneHash(i);
+        genome.invalidate();
+    }
+    public void setEnabled(int i, boolean enable) {
+        if(enabled[i] == enable) return;
+        enabled[i] = enable;
+        enabledCount += enable ? 1 : -1;
+        hash += enable ? geneHash(i) : -geneHash(i);
+        genome.invalidate();
+    }
+    
+    /**
+     * Returns the hash of the gene at the given index, from its nodes and weight
+     * Genes are summed into hash, so the order they were added in does not matter
+     * @param i
+     * @return 
+     */
+    private long geneHash(int i) {
+        return Genome.mix(((long) ins[i] << 32 | (outs[i] & 0xFFFFFFFFL)) ^ Genome.mix(Double.doubleToLongBits(weights[i])));
+    }
+
+    /**
+     * Returns a random GeneConnection that has been stored, or null if none are stored
+     * @param rand
+     * @return
+     */
+    public GeneConnection getRandomConnection(SplittableRandom rand) {
+        if(size == 0) return null;
+        return genes[rand.nextInt(size)];
+    }
+
+    /**
+     * Returns a random Enabled GeneConnection, or null if none are stored
+     * @param rand
+     * @return
+     */
+    public GeneConnection getRandomEnabledConnection(SplittableRandom rand) {
+        if(enabledCount == 0) return null;
+        int skip = rand.nextInt(enabledCount);
+        for(int i = 0; i < size; ++i) {
+            if(enabled[i] && skip-- == 0) return genes[i];
+        }
+        return null;
+    }
+
+    /**
+     * Returns all GeneConnections as a new Array, in innovation order
+     * @return
+     */
+    public GeneConnection[] getConnections() {
+        return Arrays.copyOf(genes, size);
+    }
+
+    /**
+     * Stores every GeneConnection again under the current nums of its GeneNodes and its current innovation number
+     */
+    public void rebuild() {
+        GeneConnection[] all = getConnections();
+        clear();
+        for(GeneConnection gc : all) putConnection(gc);
+    }
+
+    /**
+     * Removes every gene, keeping the capacity of the arrays
+     * Removed GeneConnections keep their last weight and enabled state
+     */
+    public void clear() {
+        for(int i = 0; i < size; ++i) {
+            genes[i].detach();
+            genes[i] = null;
+        }
+        size = 0;
+        enabledCount = 0;
+        hash = 0;
+        index.clear();
+        genome.invalidate();
+    }
+
+    @Override
+    public String toString() {
+        String out = "";
+
+        for(int i = 0; i < size; ++i) {
+            out += genes[i] + " | ";
+        }
+
+        if(out.length() >= 3) out = out.substring(0, out.length() - 3);
+        return out;
+    }
+
+  //----------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+
+    /**
+     * Open addressing map from an (in, out) pair of GeneNode nums to an innovation number
+     */
+    private static class PairIndex {
+
+        public static final int MISSING = Integer.MIN_VALUE;
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        private long[] keys = new long[16];
+        private int[] values = new int[16];
+        private int count = 0;
+
+        public PairIndex() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        public int get(int in, int out) {
+            long key = key(in, out);
+            int mask = keys.length - 1;
+            for(int i = mix(key) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if(keys[i] == key) return values[i];
+            }
+            return MISSING;
+        }
+
+        public void put(int in, int out, int value) {
+            if(count * 2 >= keys.length) grow();
+            long key = key(in, out);
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while(keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+            if(keys[i] == EMPTY) ++count;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        public void clear() {
+            if(count == 0) return;
+            Arrays.fill(keys, EMPTY);
+            count = 0;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for(int j = 0; j < oldKeys.length; ++j) {
+                if(oldKeys[j] == EMPTY) continue;
+                int i = mix(oldKeys[j]) & mask;
+                while(keys[i] != EMPTY) i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+
+        private static long key(int in, int out) {
+            return ((long) in << 32) | (out & 0xFFFFFFFFL);
+        }
+        private static int mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+
+package neat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Holds what FitnessEvaluators share: the timer that times evaluations out, and the virtual thread executor loaded reflectively
+ * @author rewil
+ */
+class Evaluations {
+
+    private static ScheduledExecutorService timer = null; // Started the first time an evaluation has a timeout
+
+    private Evaluations() {}
+
+    /**
+     * Returns a future completed like the given one, or with a TimeoutException if that takes longer than nanos
+     * The given future is left to finish on timeout, so whatever waits on it, such as the permit of its call, is held until the work really ends
+     * @param <T>
+     * @param future
+     * @param nanos
+     * @return
+     */
+    static <T> CompletableFuture<T> within(CompletableFuture<T> future, long nanos) {
+        CompletableFuture<T> out = new CompletableFuture<>();
+        ScheduledFuture<?> alarm = timer().schedule(() -> {
+            out.completeExceptionally(new TimeoutException()); // Cancelling the future would complete it without stopping its work
+        }, nanos, TimeUnit.NANOSECONDS);
+        future.whenComplete((value, error) -> {
+            alarm.cancel(false);
+            if(error == null) out.complete(value);
+            else out.completeExceptionally(error);
+        });
+        return out;
+    }
+    private static synchronized ScheduledExecutorService timer() {
+        if(timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "NEAT evaluation timer");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return timer;
+    }
+
+    /**
+     * Returns Executors.newVirtualThreadPerTaskExecutor() if this JVM has it, otherwise a cached pool of daemon threads
+     * @return
+     */
+    static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "NEAT evaluation");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+
+package neat;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the scores of Genomes by their structural hash, so copies of a Genome already scored are not evaluated again
+ * Holds up to a fixed number of scores, dropping one not used recently when full, chosen by the clock algorithm
+ * Scores are kept in primitive arrays made up front, so lookups and stores allocate nothing
+ * Only sound for fitness functions that always give the same Genome the same score
+ * @author rewil
+ */
+public class FitnessCache {
+
+    private final int capacity;
+    private final long[] hashes; // Hash of each entry
+    private final double[] scores; // Score of each entry
+    private final boolean[] used; // Set when an entry is looked up or stored, cleared as the clock passes it
+    private int size = 0;
+    private int hand = 0; // Next entry the clock looks at for eviction
+    private final int[] table; // Open addressing index of entries by hash, entry + 1, 0 where empty
+    private final int mask;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Generates a cache holding the scores of up to capacity distinct Genomes
+     * @param capacity
+     */
+    public FitnessCache(int capacity) {
+        if(capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+        if(capacity > 1 << 28) throw new IllegalArgumentException("Capacity must be at most " + (1 << 28));
+        this.capacity = capacity;
+        hashes = new long[capacity];
+        scores = new double[capacity];
+        used = new boolean[capacity];
+        table = new int[Integer.highestOneBit(capacity) << 2]; // At most half full
+        mask = table.length - 1;
+    }
+
+    /**
+     * Returns the score stored for the given hash, or absent if there is none, counting a hit or a miss
+     * @param hash
+     * @param absent
+     * @return
+     */
+    public synchronized double get(long hash, double absent) {
+        int slot = find(hash);
+        if(table[slot] == 0) {
+            ++misses;
+            return absent;
+        }
+        ++hits;
+        int entry = table[slot] - 1;
+        used[entry] = true;
+        return scores[entry];
+    }
+    public synchronized void put(long hash, double score) {
+        int slot = find(hash);
+        int entry;
+        if(table[slot] != 0) {
+            entry = table[slot] - 1;
+        } else {
+            entry = size < capacity ? size++ : evict();
+            slot = find(hash); // Eviction may have moved entries in the table
+            table[slot] = entry + 1;
+            hashes[entry] = hash;
+        }
+        scores[entry] = score;
+        used[entry] = true;
+    }
+    /**
+     * Sets the score of the given Genome from the cache, returning if one was stored, counting a hit or a miss
+     * @param g
+     * @return
+     */
+    public synchronized boolean score(Genome g) {
+        int slot = find(g.getStructuralHash());
+        if(table[slot] == 0) {
+            ++misses;
+            return false;
+        }
+        ++hits;
+        int entry = table[slot] - 1;
+        used[entry] = true;
+        g.setScore(scores[entry]);
+        return true;
+    }
+    public void put(Genome g) {
+        put(g.getStructuralHash(), g.getScore());
+    }
+
+    /**
+     * Forgets every score, such as when the fitness function changes, keeping the hit and miss counts
+     */
+    public synchronized void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(used, false);
+        size = 0;
+        hand = 0;
+    }
+
+  //----------------------------------------------------------------------------
+
+    /**
+     * Returns the slot of the table holding the given hash, or the empty slot it would go in
+     * @param hash
+     * @return
+     */
+    private int find(long hash) {
+        int slot = mix(hash) & mask;
+        while(table[slot] != 0 && hashes[table[slot] - 1] != hash) slot = (slot + 1) & mask;
+        return slot;
+    }
+    /**
+     * Moves the clock past entries used since it last passed them, clearing their marks, and frees the first entry not used
+     * @return the entry freed
+     */
+    private int evict() {
+        while(used[hand]) {
+            used[hand] = false;
+            hand = (hand + 1) % capacity;
+        }
+        int entry = hand;
+        hand = (hand + 1) % capacity;
+        remove(find(hashes[entry]));
+        return entry;
+    }
+    /**
+     * Empties the given slot, moving later entries of its probe run back so every entry stays reachable
+     * @param slot
+     */
+    private void remove(int slot) {
+        for(int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = mix(hashes[table[next] - 1]) & mask;
+            if(((next - home) & mask) >= ((next - slot) & mask)) { // Home is at or before the empty slot, so the entry may move into it
+                table[slot] = table[next];
+                slot = next;
+            }
+        }
+        table[slot] = 0;
+    }
+    private static int mix(long hash) {
+        hash *= 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+    public int getCapacity() {
+        return capacity;
+    }
+    public synchronized long getHits() {
+        return hits;
+    }
+    public synchronized long getMisses() {
+        return misses;
+    }
+    /**
+     * Returns the fraction of lookups that found a score, or 0 if there have been none
+     * @return
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    @Override
+    public String toString() {
+        return "FitnessCache " + size() + "/" + capacity + ", hit rate " + getHitRate();
+    }
+
+}
@@ -0,0 +1,90 @@
+
+package neat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Scores Genomes for SpeciesManipulator.evaluate(FitnessEvaluator)
+ * Scores are handed back rather than set, so the SpeciesManipulator decides when they land and what a timed out Genome gets
+ * Use sync() for plain functions, batch() for functions that score many Genomes at once, and async() for ones already returning futures
+ * @author rewil
+ */
+public interface FitnessEvaluator {
+
+    /**
+     * Starts scoring the given Genomes, completing with one score per Genome in the same order
+     * Work that blocks should be run on the given executor, which is bounded by the SpeciesManipulator
+     * @param genomes
+     * @param executor
+     * @return
+     */
+    CompletableFuture<double[]> evaluate(Genome[] genomes, Executor executor);
+
+    /**
+     * Returns the number of Genomes given to each call of evaluate
+     * @return
+     */
+    default int getBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Returns an evaluator that runs the given function on the executor for each Genome
+     * @param fitness
+     * @return
+     */
+    static FitnessEvaluator sync(ToDoubleFunction<Genome> fitness) {
+        return (genomes, executor) -> CompletableFuture.supplyAsync(() -> {
+            double[] out = new double[genomes.length];
+            for(int i = 0; i < genomes.length; ++i) out[i] = fitness.applyAsDouble(genomes[i]);
+            return out;
+        }, executor);
+    }
+    /**
+     * Returns an evaluator that runs the given function on the executor for up to size Genomes at a time
+     * The function returns one score per Genome it is given, in the same order
+     * @param size
+     * @param fitness
+     * @return
+     */
+    static FitnessEvaluator batch(int size, Function<Genome[],double[]> fitness) {
+        if(size < 1) throw new IllegalArgumentException("Batch size must be at least 1");
+        return new FitnessEvaluator() {
+            @Override
+            public CompletableFuture<double[]> evaluate(Genome[] genomes, Executor executor) {
+                return CompletableFuture.supplyAsync(() -> fitness.apply(genomes), executor);
+            }
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        };
+    }
+    /**
+     * Returns an evaluator for a function that starts scoring a Genome and returns without waiting for it
+     * The function is called on the thread running evaluate, so it should hand any blocking work off itself
+     * @param fitness
+     * @return
+     */
+    static FitnessEvaluator async(Function<Genome,? extends CompletionStage<Double>> fitness) {
+        return (genomes, executor) -> {
+            if(genomes.length != 1) throw new IllegalArgumentException("An async evaluator scores one Genome at a time");
+            return fitness.apply(genomes[0]).toCompletableFuture().thenApply(score -> new double[]{score});
+        };
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per evaluation on Java 21 or later, and otherwise one reusing a cached pool of daemon threads
+     * Suited to evaluations that spend their time waiting on I/O, with SpeciesManipulator.setMaxConcurrentEvaluations() as the bound
+     * @return
+     */
+    static ExecutorService virtualThreads() {
+        return Evaluations.virtualThreads();
+    }
+
+}
@@ -2,7 +2,8 @@
 package neat;
 
 import java.util.InputMismatchException;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  *
@@ -10,12 +11,15 @@ import java.util.Random;
  */
 public class GeneConnection implements Comparable{
     
-    private final GeneNode in, out;
-    private final int innovation;
+    private GeneNode in, out;
+    private int innovation;
     
     private double weight;
     private boolean enabled;
     
+    private ConnectionHolder holder = null; // While stored in a Genome, weight and enabled live in its ConnectionHolder
+    private int slot;
+    
     private static final double maxWeight = 2d;
     private static final double minWeight = -2d;
     private static final double maxWeightShift = 0.3d;
@@ -26,44 +30,60 @@ public class GeneConnection implements Comparable{
         this.innovation = innovation;
         this.weight = weight;
         
-        out.putInput(this);
-        
         enabled = true;
     }
     
-    /**
-     * Returns the value of the In node multiplied by the weight of the GeneConnection
-     * @return 
-     */
-    public double getValue() {
-        if(!enabled) return 0;
-        double out = in.getValue() * weight;
-        return out;
-    }
-    
   //----------------------------------------------------------------------------
     
     public double getWeight() {
-        return weight;
+        return holder == null ? weight : holder.weights[slot];
     }
     public void setWeight(double weight) {
-        this.weight = weight;
+        if(holder == null) this.weight = weight;
+        else holder.setWeight(slot, weight);
     }
     /**
      * Shifts weight by given double, or sets it to Max or Min weight if it would surpass one
      * @param shift 
      */
     public void shiftWeight(double shift) {
-        weight += shift;
+        double weight = getWeight() + shift;
         if (weight > maxWeight) weight = maxWeight;
         if (weight < minWeight) weight = minWeight;
+        setWeight(weight);
     }
 
     public boolean isEnabled() {
-        return enabled;
+        return holder == null ? enabled : holder.enabled[slot];
     }
     public void setEnabled(boolean enabled) {
-        this.enabled = enabled;
+        if(holder == null) this.enabled = enabled;
+        else holder.setEnabled(slot, enabled);
+    }
+    
+    /**
+     * Called by the ConnectionHolder storing this GeneConnection at the given index
+     * @param holder
+     * @param slot 
+     */
+    void attach(ConnectionHolder holder, int slot) {
+        this.holder = holder;
+        this.slot = slot;
+    }
+    /**
+     * Called by the ConnectionHolder when it moves this GeneConnection to a new index
+     * @param slot 
+     */
+    void moveTo(int slot) {
+        this.slot = slot;
+    }
+    /**
+     * Called by the ConnectionHolder when it stops storing this GeneConnection, which keeps its last weight and enabled state
+     */
+    void detach() {
+        weight = holder.weights[slot];
+        enabled = holder.enabled[slot];
+        holder = null;
     }
 
     public GeneNode getIn() {
@@ -76,6 +96,22 @@ public class GeneConnection implements Comparable{
     public int getInnovation() {
         return innovation;
     }
+    /**
+     * Replaces GeneNodes holding temporary nums with the shared ones they became, see Genome.commitInnovations()
+     * @param in
+     * @param out 
+     */
+    void relink(GeneNode in, GeneNode out) {
+        this.in = in;
+        this.out = out;
+    }
+    /**
+     * Replaces a temporary innovation number with its final one, see Genome.commitInnovations()
+     * @param innovation 
+     */
+    void renumber(int innovation) {
+        this.innovation = innovation;
+    }
     
     public double getCenterX() {
         return Math.abs(((out.getX() - in.getX()) / 2) + in.getX());
@@ -93,20 +129,27 @@ public class GeneConnection implements Comparable{
     public static double getMaxWeightShift() {
         return maxWeightShift;
     }
+    /**
+     * Returns a random weight from the calling thread's own generator, which cannot be seeded
+     * Use getRandomWeight(SplittableRandom) for weights that must be reproducible
+     * @return 
+     */
     public static double getRandomWeight() {
-        Random rand = new Random();
+        return ((ThreadLocalRandom.current().nextDouble() * (maxWeight - minWeight)) + minWeight);
+    }
+    public static double getRandomWeight(SplittableRandom rand) {
         return ((rand.nextDouble() * (maxWeight - minWeight)) + minWeight);
     }
     
     public double getWeightOnScale() {
-        return ((weight - minWeight) / (maxWeight - minWeight));
+        return ((getWeight() - minWeight) / (maxWeight - minWeight));
     }
     
     @Override
     public String toString() {
         String out = "";
         
-        out += "(" + in.getNum() + ", " + this.out.getNum() + " - " + weight + ")";
+        out += "(" + in.getNum() + ", " + this.out.getNum() + " - " + getWeight() + ")";
         
         return out;
     }
@@ -119,18 +162,10 @@ public class GeneConnection implements Comparable{
     }
 
     @Override
-    public int compareTo(Object o) {
+    public int compareTo(Object o) { // Orders GeneConnections by Innovation Number, matching equals()
         if(!getClass().isInstance(o)) throw new InputMismatchException("Cannot compare GeneConnection to non-GeneConnection instance");
         GeneConnection check = (GeneConnection) o;
-        
-        if(in.getNum() == check.getIn().getNum()) {
-            if(out.getNum() == check.getOut().getNum()) return 0; // In and Out match, so they're equal
-            else if(out.getNum() < check.getOut().getNum()) return -1; // In matches, but out is less, so this is less
-            else if(out.getNum() > check.getOut().getNum()) return 1; // In matches, but out is greature, so this is greater
-        } else if(in.getNum() < check.getIn().getNum()) return -1; // In is less, so this is less
-          else if(in.getNum() > check.getIn().getNum()) return 1; // In is greater, so this is greater
-        
-        throw new InputMismatchException("Reached end of compareTo without satisfying a condition. This should be impossible");
+        return Integer.compare(innovation, check.getInnovation());
     }
     
 }
@@ -1,27 +1,58 @@
 
 package neat;
 
-import java.util.ArrayList;
-import javafx.scene.paint.Color;
-
 /**
- *
+ * Identity and layout of a node, shared by every Genome of an InnovationRegistry
+ * Immutable, so a GeneNode seen through InnovationRegistry.getNode() is whole on every thread, and Genomes mutating in parallel cannot race on it
+ * Genomes hold only the nums of their GeneNodes, with their own activation function for each, see Genome.getActivation()
+ * Values are kept by the CompiledNetwork of each Genome rather than here
  * @author rewil
  */
 public class GeneNode {
 
     private final int num;
     private final int stage; // 0 - Input, 1 - Hidden, 2 - Output
+    private final int splitIn; // Nums at either end of the connection a Hidden Node split, NO_SPLIT if it did not come from a split
+    private final int splitOut;
     
+    static final int NO_SPLIT = Integer.MIN_VALUE;
     
     public GeneNode(int num, int stage) {
         this(num, stage, 0, 0);
     }
     public GeneNode(int num, int stage, double x, double y) {
+        this(num, stage, x, y, 0x000000);
+    }
+    /**
+     * Generates a GeneNode with the given layout
+     * @param num
+     * @param stage
+     * @param x
+     * @param y
+     * @param color packed as 0xRRGGBB
+     */
+    public GeneNode(int num, int stage, double x, double y, int color) {
+        this(num, stage, x, y, color, NO_SPLIT, NO_SPLIT);
+    }
+    /**
+     * Generates a Hidden GeneNode made by splitting the connection from splitIn to splitOut, with the given layout
+     * The pair lets migrants be matched to local Hidden Nodes by structure, see InnovationRegistry.findSplitNode()
+     * @param num
+     * @param stage
+     * @param x
+     * @param y
+     * @param color packed as 0xRRGGBB
+     * @param splitIn
+     * @param splitOut 
+     */
+    GeneNode(int num, int stage, double x, double y, int color, int splitIn, int splitOut) {
         this.num = num;
         this.stage = stage;
+        this.splitIn = splitIn;
+        this.splitOut = splitOut;
         this.x = x;
         this.y = y;
+        this.color = color & 0xFFFFFF;
     }
     
     public int getNum() {
@@ -32,55 +63,22 @@ public class GeneNode {
         return stage;
     }
     
-  //----------------------------------------------------------------------------
-    
-    private double value = 1;
-    private boolean calculated = false;
-    private final ArrayList<GeneConnection> inputs = new ArrayList<>();
-    
     /**
-     * Calculates the value of the GeneNode, then returns it
+     * Returns the num of the GeneNode leading into the connection this Hidden Node split, or NO_SPLIT if it did not come from a split
      * @return 
      */
-    public double getValue() {
-        if(stage != 0 && !calculated) calculate();
-        return value;
-    }
-    
-    /**
-     * Sets value of GeneNode to given value
-     * If GeneNode is not of Input Stage (0), value will be overridden when getValue() is called
-     * @param value 
-     */
-    public void setValue(double value) {
-        this.value = value;
-    }
-    
-    /**
-     * Gets the values of enabled GeneConnections inputting into this GeneNode, then stores the total
-     */
-    private void calculate() {
-        value = 0;
-        for(GeneConnection gc : inputs) {
-            if(gc.isEnabled()) value += gc.getValue();
-        }
-        calculated = true;
+    int getSplitIn() {
+        return splitIn;
     }
-    
     /**
-     * Adds a GeneConnection to the collection of inputs for this GeneNode
-     * @param connection 
+     * Returns the num of the GeneNode the connection this Hidden Node split led to, or NO_SPLIT if it did not come from a split
+     * @return 
      */
-    public void putInput(GeneConnection connection) {
-        inputs.add(connection);
+    int getSplitOut() {
+        return splitOut;
     }
-    
-    /**
-     * Marks this GeneNode as needing to recalculate its value
-     * Recalculation will occur next time getValue() is called
-     */
-    public void markUncalculated() {
-        calculated = false;
+    boolean isSplit() {
+        return splitIn != NO_SPLIT;
     }
     
   //----------------------------------------------------------------------------
@@ -89,46 +87,47 @@ public class GeneNode {
     //<editor-fold>
     
     // Visualization Vars
-    private double x = 0;
-    private double y = 0;
-    private Color color = Color.BLACK;
+    private final double x; // Also orders nodes for feed-forward GeneConnections, see Genome.mutateAddConnection()
+    private final double y;
+    private final int color; // Packed 0xRRGGBB, so the core needs no JavaFX, the visualizer turns it into a Color when drawing
     
     public double getX() {
         return x;
     }
 
-    public void setX(double x) {
-        this.x = x;
-    }
-
     public double getY() {
         return y;
     }
 
-    public void setY(double y) {
-        this.y = y;
-    }
-
-    public Color getColor() {
+    /**
+     * Returns the color of this GeneNode packed as 0xRRGGBB
+     * Hidden Nodes made by a split are left black, as their color comes from the ends of the split when drawn, see Genome.getColors()
+     * @return 
+     */
+    public int getColor() {
         return color;
     }
-
-    public void setColor(Color color) {
-        this.color = color;
-    }
     
-    public Color getCenterColor(GeneNode gn) {
-        Color c = gn.getColor();
-        
-        double red = ((c.getRed() - color.getRed()) / 2 ) + color.getRed();
-        double blue = ((c.getBlue() - color.getBlue()) / 2 ) + color.getBlue();
-        double green = ((c.getGreen() - color.getGreen()) / 2 ) + color.getGreen();
-        
-        red = Math.abs(red);
-        green = Math.abs(green);
-        blue = Math.abs(blue);
+    /**
+     * Returns the color halfway between this GeneNode and the given one, packed as 0xRRGGBB
+     * @param gn
+     * @return 
+     */
+    public int getCenterColor(GeneNode gn) {
+        return getCenterColor(color, gn.getColor());
+    }
+    /**
+     * Returns the color halfway between the two given colors, each packed as 0xRRGGBB
+     * @param a
+     * @param b
+     * @return 
+     */
+    public static int getCenterColor(int a, int b) {
+        int red = (((a >> 16) & 0xFF) + ((b >> 16) & 0xFF)) / 2;
+        int green = (((a >> 8) & 0xFF) + ((b >> 8) & 0xFF)) / 2;
+        int blue = ((a & 0xFF) + (b & 0xFF)) / 2;
         
-        return Color.color(red, green, blue);
+        return red << 16 | green << 8 | blue;
     }
     //</editor-fold>
     
@@ -154,5 +153,15 @@ public class GeneNode {
     public GeneNode clone() {
         return new GeneNode(num, stage, x, y);
     }
+    /**
+     * Returns a copy of this GeneNode with the given num and split, keeping its layout
+     * @param num
+     * @param splitIn
+     * @param splitOut
+     * @return 
+     */
+    GeneNode renumbered(int num, int splitIn, int splitOut) {
+        return new GeneNode(num, stage, x, y, color, splitIn, splitOut);
+    }
     
 }
@@ -0,0 +1,26 @@
+
+package neat;
+
+/**
+ * Receives the metrics of every generation processed by a SpeciesManipulator
+ * Called on the thread running process(), after the generation has finished
+ * @author rewil
+ */
+public interface GenerationListener {
+    
+    /**
+     * Called once per generation with the metrics gathered since the previous generation
+     * @param metrics null if no attached listener needs metrics, see needsMetrics()
+     */
+    void generationProcessed(GenerationMetrics metrics);
+    
+    /**
+     * Returns if this listener reads the metrics it is given
+     * Metrics are only gathered while a listener that needs them is attached, so one that only wants to know a generation ended should return false
+     * @return 
+     */
+    default boolean needsMetrics() {
+        return true;
+    }
+    
+}
@@ -0,0 +1,219 @@
+
+package neat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timings and counts gathered over one generation of a SpeciesManipulator
+ * Only gathered while a GenerationListener that needs them is attached, so an unobserved run pays nothing for them
+ * Evaluations are counted from the end of the previous generation, so scoring before process() is counted in the generation it leads into
+ * @author rewil
+ */
+public class GenerationMetrics {
+    
+    /**
+     * The phases of SpeciesManipulator.process(), in the order they run
+     */
+    public enum Phase {
+        TRIM,
+        REFILL,
+        MUTATE,
+        RESPECIATE
+    }
+    
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean countAllocation = threads instanceof com.sun.management.ThreadMXBean 
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    
+    private final int generation;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] phaseBytes = new long[Phase.values().length]; // -1 where the JVM cannot count allocation
+    
+    private long evaluated = 0; // Genomes evaluated
+    private long evaluationNanos = 0;
+    private long cacheHits = 0; // Genomes given a score without being evaluated, see FitnessCache
+    private final LongAdder compatChecks = new LongAdder(); // Counted from many threads during respeciate
+    private final long[] mutations = new long[MutationType.values().length];
+    
+    private int speciesCount;
+    private int genomeCount;
+    private int[] complexities = new int[0]; // Complexity of every Genome after the generation, sorted
+    
+    GenerationMetrics(int generation) {
+        this.generation = generation;
+    }
+    
+    // Recording
+    //<editor-fold>
+    void addPhase(Phase phase, long nanos, long bytes) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseBytes[phase.ordinal()] = bytes < 0 || phaseBytes[phase.ordinal()] < 0 ? -1 : phaseBytes[phase.ordinal()] + bytes;
+    }
+    void addEvaluation(int genomes, long nanos) {
+        evaluated += genomes;
+        evaluationNanos += nanos;
+    }
+    void addCacheHits(int genomes) {
+        cacheHits += genomes;
+    }
+    LongAdder getCompatCounter() {
+        return compatChecks;
+    }
+    void addMutations(int[] counts) {
+        for(int i = 0; i < counts.length; ++i) mutations[i] += counts[i];
+    }
+    /**
+     * Records the Species and the complexity of every Genome at the end of the generation
+     * @param species
+     * @param genomes 
+     */
+    void finish(Species[] species, Genome[] genomes) {
+        speciesCount = species.length;
+        genomeCount = genomes.length;
+        complexities = new int[genomes.length];
+        for(int i = 0; i < genomes.length; ++i) complexities[i] = genomes[i].getComplexity();
+        Arrays.sort(complexities);
+    }
+    
+    /**
+     * Returns the bytes allocated so far by every live thread, or -1 if the JVM cannot count them
+     * Threads that end between two calls take their allocation with them, so pool threads should outlive the measurement
+     * @return 
+     */
+    static long allocatedBytes() {
+        if(!countAllocation) return -1;
+        long out = 0;
+        for(long bytes : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if(bytes > 0) out += bytes;
+        }
+        return out;
+    }
+    //</editor-fold>
+    
+    public int getGeneration() {
+        return generation;
+    }
+    /**
+     * Returns the wall time of the given phase, in nanoseconds
+     * @param phase
+     * @return 
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+    /**
+     * Returns the bytes allocated by every thread during the given phase, or -1 if the JVM cannot count them
+     * @param phase
+     * @return 
+     */
+    public long getPhaseBytes(Phase phase) {
+        return phaseBytes[phase.ordinal()];
+    }
+    /**
+     * Returns the wall time of every phase together, in nanoseconds
+     * @return 
+     */
+    public long getTotalNanos() {
+        long out = 0;
+        for(long n : phaseNanos) out += n;
+        return out;
+    }
+    
+    /**
+     * Returns the number of Genomes run through SpeciesManipulator.evaluate() or calculate()
+     * Genomes scored from a FitnessCache are not counted, see getCacheHits()
+     * @return 
+     */
+    public long getEvaluated() {
+        return evaluated;
+    }
+    public long getEvaluationNanos() {
+        return evaluationNanos;
+    }
+    /**
+     * Returns the number of Genomes evaluated per second of evaluation wall time, or 0 if none were evaluated
+     * @return 
+     */
+    public double getEvaluationRate() {
+        return evaluationNanos == 0 ? 0 : evaluated * 1e9 / evaluationNanos;
+    }
+    /**
+     * Returns the number of Genomes scored from a FitnessCache, or copied from an identical Genome evaluated in the same call
+     * @return 
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+    /**
+     * Returns the fraction of Genomes scored without being evaluated, or 0 if none were scored
+     * @return 
+     */
+    public double getCacheHitRate() {
+        return evaluated + cacheHits == 0 ? 0 : (double) cacheHits / (evaluated + cacheHits);
+    }
+    /**
+     * Returns the number of compatibility checks made while speciating, by respeciate() and storeGenome() alike
+     * Only checks that compare genes are counted, Species ruled out by gene count alone are not
+     * @return 
+     */
+    public long getCompatChecks() {
+        return compatChecks.sum();
+    }
+    /**
+     * Returns the number of mutations of the given type Genomes rolled for, including ones that found nothing to change
+     * @param type
+     * @return 
+     */
+    public long getMutations(MutationType type) {
+        return mutations[type.ordinal()];
+    }
+    
+    public int getSpeciesCount() {
+        return speciesCount;
+    }
+    public int getGenomeCount() {
+        return genomeCount;
+    }
+    public int getMinComplexity() {
+        return complexities.length == 0 ? 0 : complexities[0];
+    }
+    public int getMaxComplexity() {
+        return complexities.length == 0 ? 0 : complexities[complexities.length - 1];
+    }
+    public double getMeanComplexity() {
+        double out = 0;
+        for(int c : complexities) out += c;
+        return complexities.length == 0 ? 0 : out / complexities.length;
+    }
+    /**
+     * Returns the complexity below which the given fraction of Genomes fall, for a fraction from 0 to 1
+     * @param fraction
+     * @return 
+     */
+    public int getComplexityPercentile(double fraction) {
+        if(complexities.length == 0) return 0;
+        int i = (int) Math.ceil(fraction * complexities.length) - 1;
+        return complexities[Math.max(0, Math.min(complexities.length - 1, i))];
+    }
+    
+    @Override
+    public String toString() {
+        String out = "";
+        out += "Generation: " + generation + '\n';
+        for(Phase p : Phase.values()) {
+            out += p + ": " + (getPhaseNanos(p) / 1e6) + " ms, " + getPhaseBytes(p) + " bytes" + '\n';
+        }
+        out += "Genomes evaluated per second: " + getEvaluationRate() + '\n';
+        out += "Cache hit rate: " + getCacheHitRate() + '\n';
+        out += "Species Found: " + speciesCount + '\n';
+        out += "Compatibility checks: " + getCompatChecks() + '\n';
+        out += "Mutations: " + Arrays.toString(mutations) + '\n';
+        out += "Complexity min/median/90%/max: " + getMinComplexity() + '/' + getComplexityPercentile(0.5) + '/' + getComplexityPercentile(0.9) + '/' + getMaxComplexity();
+        return out;
+    }
+    
+}
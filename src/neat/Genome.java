@@ -1,16 +1,10 @@
 
 package neat;
 
-import java.util.ArrayList;
+import java.nio.DoubleBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.InputMismatchException;
-import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import javafx.scene.paint.Color;
-import visualizer.GenomeVisualizerFXMLController;
-import visualizer.GenomeVisualizerInterface;
+import java.util.SplittableRandom;
 
 /**
  *
@@ -28,20 +22,42 @@ public class Genome implements Comparable{
     private final double yScale = 10;
     private final double yVariance = 2;
     
-    private final Color colorLeft = Color.ORANGE;
-    private final Color colorRight = Color.BLUE;
+    private final int colorLeft = 0xFFA500; // Orange
+    private final int colorRight = 0x0000FF; // Blue
     
-    private final ArrayList<Integer> nodeNums = new ArrayList<>();
-    private final Map<Integer,GeneNode> nodes = new HashMap<>();
-    private final ConnectionHolder connections = new ConnectionHolder();
+    private int[] nodeNums = new int[8]; // Nums of the GeneNodes of this Genome in ascending order, the GeneNodes themselves are shared by the InnovationRegistry
+    private byte[] nodeActivations = new byte[8]; // Activation ordinal of each GeneNode, in the order of nodeNums
+    private int nodeSize = 0;
+    private GeneNode[] stagedNodes = new GeneNode[0]; // Hidden Nodes made while staged, at index -num - 1 of their temporary num
+    private final ConnectionHolder connections = new ConnectionHolder(this);
     private final int[] nodeCounts = new int[3];
-    private final Random rand = new Random();
+    private SplittableRandom rand; // Split from the InnovationRegistry until set, see setRandom()
+    private final InnovationRegistry innovations;
+    
+    private boolean staged = false; // While true, innovations new to the registry get temporary negative numbers
+    private int[] pending = new int[24]; // Staged innovations as (in, out, temp) or (split, NODE_MARK, temp) triples, in order made
+    private int pendingSize = 0;
+    private int tempCount = 0;
+    private static final int NODE_MARK = Integer.MIN_VALUE;
+    
+    private CompiledNetwork compiled = null; // Flat form of this Genome used by calculate(), rebuilt when stale
+    private boolean stale = true;
+    
+    private boolean recurrent = false; // Lets mutateAddConnection() make connections that loop back, see step()
+    private Activation[] activations = {Activation.IDENTITY}; // First is given to new Hidden Nodes, mutateActivation() picks from all
+    private boolean fastActivation = false; // Evaluate with the fast forms of activation functions
+    private long nodeHash = 0; // Sum of nodeHash() over non-Input Nodes, kept up to date as Nodes are added and changed
+    
+    Species species = null; // Species this Genome was last added to, kept by Species so membership checks take constant time
+    int memberIndex = 0; // Index of this Genome among the members of species
+    int[] mutationCounts = null; // Mutations rolled by MutationType ordinal, only counted while a SpeciesManipulator has a listener attached
     
     private final double chanceAddConnection = 0.05d; // Chance of addConnection happening in mutate()
     private final double chanceAddNode = 0.025d; // Chance of addNode happening in mutate()
     private final double chanceToggleConnection = 0.015d; // Chance of toggleConnection happening in mutate()
     private final double chanceShiftWeight = 0.01d; // Chance of shiftWeight happening in mutate()
     private final double chanceRandomizeWeight = 0.005d; // Chance of randomizeWeight happening in mutate()
+    private final double chanceChangeActivation = 0.01d; // Chance of changeActivation happening in mutate(), when there is more than one to choose from
     
     private  double mutability = 1.0d; // Weight of mutation chances, does not affect chanceChangeMutability. .Default: 1.0d
     private final double chanceChangeMutability = 0.01d; // Chance of mutability shifting in mutate()
@@ -49,55 +65,271 @@ public class Genome implements Comparable{
     //</editor-fold>
     
     /**
-     * Calculates the value of each node progressively to avoid recursion going too deep, saving outputs for last
+     * Generates an empty Genome with its own InnovationRegistry
+     */
+    public Genome() {this(new InnovationRegistry());}
+    /**
+     * Generates an empty Genome which takes innovation numbers and Hidden Node nums from the given registry
+     * Genomes that will be compared or bred together should share one registry
+     * @param innovations 
+     */
+    public Genome(InnovationRegistry innovations) {
+        this.innovations = innovations;
+        this.rand = innovations.splitRandom();
+    }
+    
+    public InnovationRegistry getInnovationRegistry() {
+        return innovations;
+    }
+    
+    /**
+     * Sets the random stream this Genome mutates with
+     * @param rand 
+     */
+    public void setRandom(SplittableRandom rand) {
+        this.rand = rand;
+    }
+    SplittableRandom getRandom() {
+        return rand;
+    }
+    
+    /**
+     * Calculates the value of each node in a single pass over the CompiledNetwork of this Genome
+     * The CompiledNetwork is only rebuilt when the structure or weights have changed since the last call
      */
     public void calculate() {
-        for(GeneNode n : nodes.values()) {
-            n.markUncalculated();
-        }
-        for(int i = 0; i <= nodeNums.get(nodeNums.size() - 1); ++i) {
-            GeneNode n = nodes.get(i);
-            if(n == null || n.getStage() == 2) continue;
-//            System.out.println(" > " + n + ": " + n.getValue());
-            n.getValue();
+        getCompiledNetwork().calculate();
+    }
+    
+    /**
+     * Calculates one time step of this Genome, carrying values around connections that loop back from the previous step
+     * Runs in a single pass over the connections without allocating, so long episodes cost the same per step
+     * State starts from 0 and is cleared by resetState(), or whenever the Genome changes
+     */
+    public void step() {
+        getCompiledNetwork().step();
+    }
+    /**
+     * Clears the state kept between calls of step()
+     */
+    public void resetState() {
+        getCompiledNetwork().resetState();
+    }
+    
+    /**
+     * Sets if mutateAddConnection() may make connections that loop back, right to left or onto the same GeneNode
+     * Children made by crossover take this from the fitter parent
+     * @param recurrent 
+     */
+    public void setRecurrent(boolean recurrent) {
+        this.recurrent = recurrent;
+    }
+    public boolean isRecurrent() {
+        return recurrent;
+    }
+    
+    /**
+     * Sets the activation functions this Genome evolves with
+     * New Hidden Nodes are given the first, and mutate() changes Nodes between them when there is more than one
+     * Children made by crossover take these from the fitter parent
+     * @param choices 
+     */
+    public void setActivations(Activation... choices) {
+        if(choices.length == 0) throw new IllegalArgumentException("At least one Activation is needed");
+        activations = choices.clone();
+    }
+    public Activation[] getActivations() {
+        return activations.clone();
+    }
+    /**
+     * Returns the activation function this Genome gives the given GeneNode, or null if the GeneNode is not in this Genome
+     * @param node
+     * @return 
+     */
+    public Activation getActivation(GeneNode node) {
+        int at = indexOfNum(node.getNum());
+        return at < 0 ? null : Activation.of(nodeActivations[at]);
+    }
+    /**
+     * Sets the activation function of a GeneNode of this Genome
+     * @param node
+     * @param activation 
+     */
+    public void setActivation(GeneNode node, Activation activation) {
+        int at = indexOfNum(node.getNum());
+            if(at < 0) throw new IllegalArgumentException("GeneNode " + node.getNum() + " is not in this Genome");
+        nodeHash -= nodeHash(at);
+        nodeActivations[at] = (byte) activation.ordinal();
+        nodeHash += nodeHash(at);
+        invalidate();
+    }
+    /**
+     * Sets if this Genome is evaluated with the fast, table based forms of activation functions
+     * @param fast 
+     */
+    public void setFastActivation(boolean fast) {
+        fastActivation = fast;
+        invalidate();
+    }
+    public boolean isFastActivation() {
+        return fastActivation;
+    }
+    
+    /**
+     * Calculates the outputs of many samples at once, in one sweep over the connections per block of samples
+     * Inputs are row-major, getInputs().length values per sample, and outputs are written row-major, getOutputs().length values per sample
+     * The single sample values read by getOutputValues() are left as they were
+     * @param inputs
+     * @param outputs
+     * @param samples 
+     */
+    public void calculateBatch(double[] inputs, double[] outputs, int samples) {
+        getCompiledNetwork().calculateBatch(inputs, 0, outputs, 0, samples);
+    }
+    /**
+     * Calculates the outputs of many samples at once, following calculateBatch(double[], double[], int)
+     * Reads from the position of inputs and writes from the position of outputs, without moving either
+     * @param inputs
+     * @param outputs
+     * @param samples 
+     */
+    public void calculateBatch(DoubleBuffer inputs, DoubleBuffer outputs, int samples) {
+        getCompiledNetwork().calculateBatch(inputs, outputs, samples);
+    }
+    
+    /**
+     * Returns the CompiledNetwork of this Genome, compiling it first if the Genome has changed
+     * @return 
+     */
+    public CompiledNetwork getCompiledNetwork() {
+        if(stale) {
+            compiled = new CompiledNetwork(this, compiled);
+            stale = false;
         }
-//        for(GeneNode n : getOutputs()) { // These are generally used for testing purposes only
-//            score = n.getValue();
-//        } 
-//        score = 100d/Math.abs(getComplexity() - 100);
+        return compiled;
+    }
+    
+    /**
+     * Marks the CompiledNetwork of this Genome as out of date
+     * Called whenever a GeneNode or GeneConnection is added, or a stored GeneConnection changes
+     */
+    void invalidate() {
+        stale = true;
+    }
+    
+    /**
+     * Returns a 64 bit hash of everything that decides the outputs of this Genome
+     * Covers every enabled gene with its nodes and weight, the activation function of every non-Input Node, and how outputs are activated
+     * Genomes with equal structure and weights hash equal however they were built, so equal hashes can share a score, see FitnessCache
+     * Kept up to date as the Genome changes, so this does not walk the Genome
+     * @return 
+     */
+    public long getStructuralHash() {
+        return mix(connections.hash + nodeHash + (recurrent ? 1 : 0) + (fastActivation ? 2 : 0));
+    }
+    private long nodeHash(int at) {
+        return node(nodeNums[at]).getStage() == 0 ? 0 : mix(((long) nodeNums[at] << 8 | nodeActivations[at]) + 0x632BE59BD9B4E019L);
+    }
+    /**
+     * Scrambles the bits of a long, the finalizer of SplitMix64
+     * @param z
+     * @return 
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
     
     /**
-     * Attempts to put a given GeneNode into the Genome
+     * Attempts to put a given GeneNode into the Genome, with the identity activation function
      * Fails and returns false if a GeneNode already in the Genome has the same num
-     * Calculates X and Y positions, as well as color, of given input and output nodes if they do not already have an X position
+     * The GeneNode is shared through the InnovationRegistry, so if another Genome already put one with the same num, that one is used instead
+     * Input and Output Nodes without an X position are laid out, along with their color, before being shared, as the shared GeneNode cannot change
      * @param node
      * @return 
      */
     public boolean putNode(GeneNode node) {
-        if(nodeNums.contains(node.getNum())) return false;
-        nodes.put(node.getNum(), node);
-        nodeNums.add(node.getNum());
-            nodeNums.sort(null);
-        nodeCounts[node.getStage()]++;
-        if(node.getX() == 0) {
-            switch(node.getStage()) {
-                case 0:
-                    node.setX(xLeft);
-                    node.setY((yScale * nodeCounts[node.getStage()]) - 5);
-                    node.setColor(colorLeft);
-                    break;
-                case 2:
-                    node.setX(xRight);
-                    node.setY((yScale * nodeCounts[node.getStage()]) - 5);
-                    node.setColor(colorRight);
-                    break;
-                default:
-                    System.out.println("Hidden Node Stored with no X coord");
-            }
+        int at = indexOfNum(node.getNum());
+            if(at >= 0) return false;
+        if(node.getNum() < 0) { // Made while staged, shared once its num is final
+            int t = -node.getNum() - 1;
+            if(t >= stagedNodes.length) stagedNodes = Arrays.copyOf(stagedNodes, Math.max(t + 1, stagedNodes.length * 2));
+            stagedNodes[t] = node;
+        } else {
+            if(node.getX() == 0) node = laidOut(node);
+            GeneNode shared = innovations.shareNode(node);
+            if(shared.getStage() != node.getStage()) throw new IllegalArgumentException("GeneNode " + node.getNum() + " is already shared with stage " + shared.getStage());
+            node = shared;
         }
+        insertNum(-at - 1, node.getNum(), Activation.IDENTITY);
+        nodeCounts[node.getStage()]++;
+        nodeHash += nodeHash(-at - 1);
+        invalidate();
         return true;
     }
+    /**
+     * Returns a copy of the given Input or Output Node placed below the others of its stage in this Genome
+     * @param node
+     * @return 
+     */
+    private GeneNode laidOut(GeneNode node) {
+        double y = (yScale * (nodeCounts[node.getStage()] + 1)) - 5;
+        switch(node.getStage()) {
+            case 0:
+                return new GeneNode(node.getNum(), 0, xLeft, y, colorLeft);
+            case 2:
+                return new GeneNode(node.getNum(), 2, xRight, y, colorRight);
+            default:
+                System.out.println("Hidden Node Stored with no X coord");
+                return node;
+        }
+    }
+    private void insertNum(int at, int num, Activation activation) {
+        if(nodeSize == nodeNums.length) {
+            nodeNums = Arrays.copyOf(nodeNums, nodeSize * 2);
+            nodeActivations = Arrays.copyOf(nodeActivations, nodeSize * 2);
+        }
+        System.arraycopy(nodeNums, at, nodeNums, at + 1, nodeSize - at);
+        System.arraycopy(nodeActivations, at, nodeActivations, at + 1, nodeSize - at);
+        nodeNums[at] = num;
+        nodeActivations[at] = (byte) activation.ordinal();
+        ++nodeSize;
+    }
+    /**
+     * Returns the index of the given num in nodeNums, or (-(insertion point) - 1) if it is not stored
+     * @param num
+     * @return 
+     */
+    private int indexOfNum(int num) {
+        return Arrays.binarySearch(nodeNums, 0, nodeSize, num);
+    }
+    /**
+     * Returns the GeneNode with the given num, which must be in this Genome
+     * @param num
+     * @return 
+     */
+    private GeneNode node(int num) {
+        return num < 0 ? stagedNodes[-num - 1] : innovations.getNode(num);
+    }
+    
+    /**
+     * Empties this Genome of GeneNodes, GeneConnections and score, so it can be built again
+     * The node and gene arrays keep their capacity, so building a Genome of a similar size again allocates nothing for them
+     */
+    void clear() {
+        nodeSize = 0;
+        connections.clear();
+        Arrays.fill(nodeCounts, 0);
+        nodeHash = 0;
+        score = 0;
+        mutability = 1.0d;
+        pendingSize = 0;
+        tempCount = 0;
+        compiled = null; // So the next CompiledNetwork starts fresh rather than from the old inputs
+        invalidate();
+    }
+    
     public void putConnection(GeneConnection connection) {
         connections.putConnection(connection);
     }
@@ -113,28 +345,100 @@ public class Genome implements Comparable{
         }
     }
     
+    /**
+     * Returns the GeneNode with the given num, or null if it is not in this Genome
+     * @param num
+     * @return 
+     */
     public GeneNode getNode(int num) {
-        return nodes.get(num);
+        return indexOfNum(num) >= 0 ? node(num) : null;
     }
+    /**
+     * Returns all GeneNodes in ascending num order
+     * @return 
+     */
     public GeneNode[] getNodes() {
-        GeneNode[] out = new GeneNode[nodes.size()];
-        return nodes.values().toArray(out);
+        GeneNode[] out = new GeneNode[nodeSize];
+        for(int i = 0; i < out.length; ++i) out[i] = node(nodeNums[i]);
+        return out;
+    }
+    GeneNode[] getSortedNodes() {
+        return getNodes();
+    }
+    /**
+     * Returns the color to draw each GeneNode with, packed as 0xRRGGBB, in the order of getNodes()
+     * Each Hidden Node made by a split takes the color halfway between the ends of the connection it split, worked out here rather than on every mutateAddNode()
+     * Other GeneNodes take their own color
+     * @return 
+     */
+    public int[] getColors() {
+        int[] out = new int[nodeSize];
+        Arrays.fill(out, -1); // Not worked out yet
+        for(int i = 0; i < nodeSize; ++i) color(i, out);
+        return out;
     }
+    private int color(int i, int[] colors) {
+        if(colors[i] >= 0) return colors[i];
+        GeneNode n = node(nodeNums[i]);
+        colors[i] = n.getColor(); // Also stops a loop of splits
+        if(n.getStage() == 1 && n.isSplit()) {
+            int in = indexOfNum(n.getSplitIn()), out = indexOfNum(n.getSplitOut());
+            if(in >= 0 && out >= 0) colors[i] = GeneNode.getCenterColor(color(in, colors), color(out, colors));
+        }
+        return colors[i];
+    }
+    public int getNodeCount() {
+        return nodeSize;
+    }
+    /**
+     * Returns all GeneConnections as a new Array, in innovation order
+     * Use getConnectionCount() and getConnection(int) to read them without copying
+     * @return 
+     */
     public GeneConnection[] getConnections() {
         return connections.getConnections();
     }
+    public int getConnectionCount() {
+        return connections.size();
+    }
+    public int getEnabledConnectionCount() {
+        return connections.getEnabledCount();
+    }
+    /**
+     * Returns the GeneConnection at the given index, with GeneConnections in innovation order
+     * @param index
+     * @return 
+     */
+    public GeneConnection getConnection(int index) {
+        return connections.get(index);
+    }
+    /**
+     * Returns the primitive gene arrays of this Genome, sorted by innovation number
+     * Only the first getConnectionCount() entries are in use
+     * @return 
+     */
+    ConnectionHolder getConnectionHolder() {
+        return connections;
+    }
     
     public GeneNode[] getInputs() {
-        ArrayList<GeneNode> inputs = new ArrayList<>();
-        for(GeneNode n : nodes.values()) if(n.getStage() == 0) inputs.add(n);
-        GeneNode[] out = new GeneNode[inputs.size()];
-        return inputs.toArray(out);
+        return getNodes(0);
     }
     public GeneNode[] getOutputs() {
-        ArrayList<GeneNode> outputs = new ArrayList<>();
-        for(GeneNode n : nodes.values()) if(n.getStage() == 2) outputs.add(n);
-        GeneNode[] out = new GeneNode[outputs.size()];
-        return outputs.toArray(out);
+        return getNodes(2);
+    }
+    /**
+     * Returns the GeneNodes of the given stage in ascending num order
+     * @param stage
+     * @return 
+     */
+    private GeneNode[] getNodes(int stage) {
+        GeneNode[] out = new GeneNode[nodeCounts[stage]];
+        for(int i = 0, o = 0; i < nodeSize; ++i) {
+            GeneNode n = node(nodeNums[i]);
+            if(n.getStage() == stage) out[o++] = n;
+        }
+        return out;
     }
     /**
      * Set input values of Genome to given int array
@@ -143,9 +447,7 @@ public class Genome implements Comparable{
      * @param inputs
      */
     public void setInputs(int... inputs) {
-        double[] doubles = new double[inputs.length];
-        for(int i = 0; i < inputs.length; ++i) doubles[i] = inputs[i];
-        setInputs(doubles);
+        getCompiledNetwork().setInputs(inputs);
     }
     /**
      * Set input values of Genome to given double array
@@ -154,11 +456,7 @@ public class Genome implements Comparable{
      * @param inputs 
      */
     public void setInputs(double... inputs) {
-        GeneNode[] ins = getInputs();
-        int i;
-        for(i = 0; i < ins.length && i < inputs.length; ++i) {
-            ins[i].setValue(inputs[i]);
-        } while(i < ins.length) ins[i++].setValue(0);
+        getCompiledNetwork().setInputs(inputs);
     }
     /**
      * Returns an array of the values of the Output Nodes
@@ -166,19 +464,24 @@ public class Genome implements Comparable{
      * @return 
      */
     public double[] getOutputValues() {
-        GeneNode[] outputs = getOutputs();
-        double[] output = new double[outputs.length];
-        
-        for(int i = 0; i < outputs.length; ++i) output[i] = outputs[i].getValue();
-        
-        return output;
+        CompiledNetwork network = getCompiledNetwork();
+        return network.getOutputValues(new double[network.getOutputCount()]);
+    }
+    /**
+     * Copies the values of the Output Nodes into the given array without allocating
+     * Does not run Calculate, should be run before calling this
+     * @param output
+     * @return the given array
+     */
+    public double[] getOutputValues(double[] output) {
+        return getCompiledNetwork().getOutputValues(output);
     }
     
     public GeneConnection getConnection(int in, int out) {
         return connections.getConnection(in, out);
     }
     public GeneConnection getRandomConnection() {
-        return connections.getRandomConnection();
+        return connections.getRandomConnection(rand);
     }
     
     public double getScore() {
@@ -191,26 +494,166 @@ public class Genome implements Comparable{
         this.score = score;
     }
     
+    /**
+     * Returns the weight of mutation chances in mutate(), which drifts as the Genome mutates
+     * @return 
+     */
+    public double getMutability() {
+        return mutability;
+    }
+    void setMutability(double mutability) {
+        this.mutability = mutability;
+    }
+    
     /**
      * Returns the Complexity of this Genome
      * Complexity is determined by adding the number of GeneNodes and GeneConnections
      * @return 
      */
     public int getComplexity() {
-        return getNodes().length + getConnections().length;
+        return nodeSize + connections.size();
     }
     
     public void mutate() {
         if(rand.nextDouble() < chanceChangeMutability) mutability += (rand.nextDouble() * (2 * maxMutabilityShift) - maxMutabilityShift);
         
         // Change Connection Weights and Network Structures
-            if(rand.nextDouble() < chanceAddConnection * mutability) mutateAddConnection(); // Add connections
-            if(rand.nextDouble() < chanceAddNode * mutability) mutateAddNode(); // Add nodes
-            if(rand.nextDouble() < chanceToggleConnection * mutability) mutateToggleConnection(); // Toggle connections
-            if(rand.nextDouble() < chanceShiftWeight * mutability) mutateShiftWeight(); // Shift Weights
-            if(rand.nextDouble() < chanceRandomizeWeight * mutability) mutateRandomizeWeight(); // Randomize Weights
+            if(rand.nextDouble() < chanceAddConnection * mutability) { // Add connections
+                mutateAddConnection();
+                count(MutationType.ADD_CONNECTION);
+            }
+            if(rand.nextDouble() < chanceAddNode * mutability) { // Add nodes
+                mutateAddNode();
+                count(MutationType.ADD_NODE);
+            }
+            if(rand.nextDouble() < chanceToggleConnection * mutability) { // Toggle connections
+                mutateToggleConnection();
+                count(MutationType.TOGGLE_CONNECTION);
+            }
+            if(rand.nextDouble() < chanceShiftWeight * mutability) { // Shift Weights
+                mutateShiftWeight();
+                count(MutationType.SHIFT_WEIGHT);
+            }
+            if(rand.nextDouble() < chanceRandomizeWeight * mutability) { // Randomize Weights
+                mutateRandomizeWeight();
+                count(MutationType.RANDOMIZE_WEIGHT);
+            }
+            if(activations.length > 1 && rand.nextDouble() < chanceChangeActivation * mutability) { // Change Activations
+                mutateActivation();
+                count(MutationType.CHANGE_ACTIVATION);
+            }
+    }
+    private void count(MutationType type) {
+        if(mutationCounts != null) ++mutationCounts[type.ordinal()];
+    }
+    
+    // Staged Innovations
+    //<editor-fold>
+    /**
+     * Runs mutate() the given number of times without assigning any new innovation numbers in the InnovationRegistry
+     * Innovations new to the registry are given temporary negative numbers until commitInnovations() is called,
+     * so many Genomes can mutate in parallel and still end up numbered in a repeatable order
+     * @param count 
+     */
+    public void mutateStaged(int count) {
+        staged = true;
+        try {
+            for(int i = 0; i < count; ++i) mutate();
+        } finally {
+            staged = false;
+        }
+    }
+    
+    /**
+     * Replaces the temporary numbers given out by mutateStaged() with numbers from the InnovationRegistry, in the order they were made
+     * Genomes should be committed one at a time in a fixed order for the numbering to be repeatable
+     */
+    public void commitInnovations() {
+        if(pendingSize == 0) return;
+        int[] resolved = new int[tempCount]; // Final number of each temporary number t, at index -t - 1
+        for(int e = 0; e < pendingSize; e += 3) {
+            int a = resolve(pending[e], resolved), b = pending[e + 1], temp = pending[e + 2];
+            if(b == NODE_MARK) resolved[-temp - 1] = innovations.getNodeNum(a);
+            else resolved[-temp - 1] = innovations.getConnectionInnovation(a, resolve(b, resolved));
+        }
+        
+        // Share each staged Hidden Node under its final num, then sort the nums again with their activations
+        long[] keyed = new long[nodeSize];
+        for(int i = 0; i < nodeSize; ++i) {
+            int num = nodeNums[i];
+            if(num < 0) {
+                num = resolved[-num - 1];
+                GeneNode node = stagedNodes[-nodeNums[i] - 1];
+                innovations.shareNode(node.renumbered(num, resolve(node.getSplitIn(), resolved), resolve(node.getSplitOut(), resolved)));
+            }
+            keyed[i] = (long) num << 8 | nodeActivations[i];
+        }
+        Arrays.sort(keyed);
+        nodeHash = 0;
+        for(int i = 0; i < nodeSize; ++i) {
+            nodeNums[i] = (int) (keyed[i] >> 8);
+            nodeActivations[i] = (byte) keyed[i];
+            nodeHash += nodeHash(i);
+        }
+        
+        for(int i = 0; i < connections.size(); ++i) {
+            GeneConnection c = connections.get(i);
+            if(c.getIn().getNum() < 0 || c.getOut().getNum() < 0) {
+                c.relink(innovations.getNode(resolve(c.getIn().getNum(), resolved)), innovations.getNode(resolve(c.getOut().getNum(), resolved)));
+            }
+            if(c.getInnovation() < 0) c.renumber(resolved[-c.getInnovation() - 1]);
+        }
+        connections.rebuild();
+        Arrays.fill(stagedNodes, null);
+        
+        pendingSize = 0;
+        tempCount = 0;
+        invalidate();
+    }
+    private static int resolve(int num, int[] resolved) {
+        return num < 0 ? resolved[-num - 1] : num;
     }
     
+    /**
+     * Returns the innovation number for a connection from in to out, or a temporary one if staged and the registry does not know it yet
+     * @param in
+     * @param out
+     * @return 
+     */
+    private int getConnectionInnovation(int in, int out) {
+        if(!staged) return innovations.getConnectionInnovation(in, out);
+        int found = in >= 0 && out >= 0 ? innovations.findConnectionInnovation(in, out) : -1;
+        return found >= 0 ? found : stage(in, out);
+    }
+    /**
+     * Returns the num for a Hidden Node splitting the given connection, or a temporary one if staged and the registry does not know it yet
+     * @param splitInnovation
+     * @return 
+     */
+    private int getNodeNum(int splitInnovation) {
+        if(!staged) return innovations.getNodeNum(splitInnovation);
+        int found = splitInnovation >= 0 ? innovations.findNodeNum(splitInnovation) : -1;
+        return found >= 0 ? found : stage(splitInnovation, NODE_MARK);
+    }
+    /**
+     * Returns the temporary number already staged for (a, b), or a new one if there is none
+     * @param a
+     * @param b
+     * @return 
+     */
+    private int stage(int a, int b) {
+        for(int e = 0; e < pendingSize; e += 3) {
+            if(pending[e] == a && pending[e + 1] == b) return pending[e + 2];
+        }
+        if(pendingSize == pending.length) pending = Arrays.copyOf(pending, pending.length * 2);
+        int temp = -(++tempCount);
+        pending[pendingSize++] = a;
+        pending[pendingSize++] = b;
+        pending[pendingSize++] = temp;
+        return temp;
+    }
+    //</editor-fold>
+    
     //Mutations
     //<editor-fold>
     /**
@@ -222,7 +665,7 @@ public class Genome implements Comparable{
     public boolean mutateAddConnection(Integer in, Integer out) {
         // New Connection Gene with random Weight is added
         if (connections.getConnection(in, out) != null) return false;
-        GeneConnection c = new GeneConnection(nodes.get(in), nodes.get(out), GeneConnection.getRandomWeight(), NEAT.getConnectInno(nodes.get(in).getNum(), nodes.get(out).getNum()));
+        GeneConnection c = new GeneConnection(node(in), node(out), GeneConnection.getRandomWeight(rand), getConnectionInnovation(in, out));
         putConnection(c);
         return true;
     }
@@ -236,7 +679,7 @@ public class Genome implements Comparable{
     public boolean mutateAddConnection(GeneNode in, GeneNode out, double weight) {
         // New Connection Gene with random Weight is added
         if (connections.getConnection(in.getNum(), out.getNum()) != null) return false;
-        GeneConnection c = new GeneConnection(in, out, weight, NEAT.getConnectInno(in.getNum(), out.getNum()));
+        GeneConnection c = new GeneConnection(in, out, weight, getConnectionInnovation(in.getNum(), out.getNum()));
         putConnection(c);
         return true;
     }
@@ -244,16 +687,24 @@ public class Genome implements Comparable{
      * Internal call to randomly mutate a connection
      */
     public void mutateAddConnection() {
-        if(nodes.size() < 2 || (nodeCounts[0] == nodes.size())) return; // Ensure enough nodes to function, and that not all nodes are inputs
+        if(nodeSize < 2 || (nodeCounts[0] == nodeSize)) return; // Ensure enough nodes to function, and that not all nodes are inputs
         int tries = 5;
+        if(recurrent) { // Any pair may connect, except into an Input Node
+            while(tries > 0) {
+                int a = nodeNums[rand.nextInt(nodeSize)], b = nodeNums[rand.nextInt(nodeSize)];
+                if(node(b).getStage() != 0 && mutateAddConnection(a, b)) tries = 0;
+                else --tries;
+            }
+            return;
+        }
         while(tries > 0) {
-            int a = rand.nextInt(nodes.size()), b = rand.nextInt(nodes.size()); // Random node selection
-            while(nodes.get(a).getX() == nodes.get(b).getX()) { // Gaurantees nodes not on same x-position
-                a = rand.nextInt(nodes.size());
-                b = rand.nextInt(nodes.size());
-//                System.out.println(nodes.get(a).getX() + " v " + nodes.get(b).getX());
+            int a = nodeNums[rand.nextInt(nodeSize)], b = nodeNums[rand.nextInt(nodeSize)]; // Random node selection
+            while(node(a).getX() == node(b).getX()) { // Gaurantees nodes not on same x-position
+                a = nodeNums[rand.nextInt(nodeSize)];
+                b = nodeNums[rand.nextInt(nodeSize)];
+//                System.out.println(node(a).getX() + " v " + node(b).getX());
             } 
-            if(nodes.get(a).getX() > nodes.get(b).getX()) { // Ensures nodes are in x-position order
+            if(node(a).getX() > node(b).getX()) { // Ensures nodes are in x-position order
                 int temp = a;
                 a = b;
                 b = temp;
@@ -265,6 +716,7 @@ public class Genome implements Comparable{
     
     /**
      * Splits the given connection into two and a new Hidden Node
+     * The Hidden Node takes its num from the InnovationRegistry, so does nothing if this Genome already split the connection this generation
      * @param connection 
      */
     public void mutateAddNode(GeneConnection connection) {
@@ -272,24 +724,26 @@ public class Genome implements Comparable{
         // Old connection is disabled, and two new ones are added
         // New leading in has weight 1, new leading out has old weight
         
-        GeneNode node = new GeneNode(nodes.size(), 1);
-            node.setX(connection.getCenterX());
-            node.setY(connection.getCenterY() + ((rand.nextDouble() * (2*yVariance)) - yVariance));
-            node.setColor(connection.getIn().getCenterColor(connection.getOut()));
+        int num = getNodeNum(connection.getInnovation());
+            if(indexOfNum(num) >= 0) return;
+        double y = connection.getCenterY() + ((rand.nextDouble() * (2*yVariance)) - yVariance);
+        GeneNode node = new GeneNode(num, 1, connection.getCenterX(), y, 0x000000, connection.getIn().getNum(), connection.getOut().getNum()); // Color is worked out when drawn, see getColors()
             putNode(node);
+            node = node(num); // Another Genome may have shared this num first
+            setActivation(node, activations[0]);
         
         connection.setEnabled(false);
         mutateAddConnection(connection.getIn(), node, 1);
-        mutateAddConnection(node, connection.getOut(), GeneConnection.getRandomWeight());
+        mutateAddConnection(node, connection.getOut(), GeneConnection.getRandomWeight(rand));
         
     }
     /**
      * Internal call to randomly mutate a new Node
      */
     public void mutateAddNode() {
-        GeneConnection g = connections.getRandomEnabledConnection();
-            if(g == null) return;
-        mutateAddNode(connections.getRandomConnection());
+        GeneConnection connection = connections.getRandomEnabledConnection(rand);
+            if(connection == null) return;
+        mutateAddNode(connection); // Only Enabled connections are split, a disabled one has already been
     }
     
     /**
@@ -303,7 +757,7 @@ public class Genome implements Comparable{
      * Internal call to toggle a random connection
      */
     public void mutateToggleConnection() {
-        GeneConnection connection = connections.getRandomConnection();
+        GeneConnection connection = connections.getRandomConnection(rand);
             if(connection == null) return;
         mutateToggleConnection(connection);
     }
@@ -331,7 +785,7 @@ public class Genome implements Comparable{
      * Shift amount will be within range indicated by GeneConnection class
      */
     public void mutateShiftWeight() {
-        GeneConnection connection = connections.getRandomEnabledConnection();
+        GeneConnection connection = connections.getRandomEnabledConnection(rand);
             if(connection == null) return;
         mutateShiftWeight(connection);
     }
@@ -348,62 +802,108 @@ public class Genome implements Comparable{
      * Internal call to randomize the weight of a random GeneConnection
      */
     public void mutateRandomizeWeight() {
-        GeneConnection connection = connections.getRandomEnabledConnection();
+        GeneConnection connection = connections.getRandomEnabledConnection(rand);
             if (connection == null) return;
         mutateRandomizeWeight(connection);
     }
+    
+    /**
+     * Gives the given GeneNode a random one of this Genome's activation functions
+     * @param node 
+     */
+    public void mutateActivation(GeneNode node) {
+        setActivation(node, activations[rand.nextInt(activations.length)]);
+    }
+    /**
+     * Internal call to randomly change the activation function of a Hidden or Output Node
+     */
+    public void mutateActivation() {
+        int candidates = nodeSize - nodeCounts[0];
+            if(candidates == 0) return;
+        int skip = rand.nextInt(candidates);
+        for(int i = 0; i < nodeSize; ++i) {
+            GeneNode n = node(nodeNums[i]);
+            if(n.getStage() != 0 && skip-- == 0) {
+                mutateActivation(n);
+                return;
+            }
+        }
+    }
     //</editor-fold>
     
     /**
      * Returns a new Genome formed by breeding the two passed in Genomes
      * GeneConnections which exist in both genomes are randomly selected to be passed on
      * GeneConnections which only exist in one genome are only passed on if their parent has the higher score
+     * Genes are selected with the new Genome's own random stream, see crossover(Genome, Genome, Genome, SplittableRandom) to reproduce a child
      * @param g1
      * @param g2
      * @return 
      */
     public static Genome crossover(Genome g1, Genome g2) {
+        return crossover(g1, g2, new Genome(g1.getInnovationRegistry()));
+    }
+    /**
+     * Breeds the two passed in Genomes into the given child, following crossover(Genome, Genome)
+     * The child is emptied first and its storage reused, so a spare Genome can be bred into without allocating gene arrays
+     * Genes are merged in one pass over both parents in innovation order, and GeneNodes are shared rather than copied
+     * @param g1
+     * @param g2
+     * @param child must not be either parent
+     * @return child
+     */
+    public static Genome crossover(Genome g1, Genome g2, Genome child) {
+        return crossover(g1, g2, child, child.rand);
+    }
+    /**
+     * Breeds the two passed in Genomes into the given child, selecting genes with the given random stream
+     * The same parents and the same stream always breed the same child
+     * @param g1
+     * @param g2
+     * @param child must not be either parent
+     * @param rand
+     * @return child
+     */
+    public static Genome crossover(Genome g1, Genome g2, Genome child, SplittableRandom rand) {
         if(g1.getScore() < g2.getScore()) {
             Genome temp = g2;
             g2 = g1;
             g1 = temp;
         }
+        if(child == g1 || child == g2) throw new IllegalArgumentException("A Genome cannot be bred into one of its parents");
         
-        Random rand = new Random();
-        Genome out = new Genome();
-        for(GeneNode n : g1.getNodes()) {
-            if(n.getStage() == 0 || n.getStage() == 2) out.putNode(n.clone());
+        child.clear();
+        child.setRecurrent(g1.isRecurrent());
+        child.activations = g1.activations; // Never changed in place, setActivations() copies
+        child.setFastActivation(g1.isFastActivation());
+        // GeneNodes are shared, so the child takes the nums and activations of the fitter parent as they are
+        if(child.nodeNums.length < g1.nodeSize) {
+            child.nodeNums = new int[g1.nodeNums.length];
+            child.nodeActivations = new byte[g1.nodeNums.length];
         }
+        System.arraycopy(g1.nodeNums, 0, child.nodeNums, 0, g1.nodeSize);
+        System.arraycopy(g1.nodeActivations, 0, child.nodeActivations, 0, g1.nodeSize);
+        System.arraycopy(g1.nodeCounts, 0, child.nodeCounts, 0, g1.nodeCounts.length);
+        child.nodeSize = g1.nodeSize;
+        child.nodeHash = g1.nodeHash;
         
-        List<GeneConnection> gc1 = Arrays.asList(g1.getConnections());
-        List<GeneConnection> gc2 = Arrays.asList(g2.getConnections());
-        for(GeneConnection c : gc1) {
-            GeneNode cIn = c.getIn().clone();
-            GeneNode cOut = c.getOut().clone();
-                if(!out.putNode(cIn)) cIn = out.getNode(cIn.getNum());
-                if(!out.putNode(cOut)) cOut = out.getNode(cOut.getNum());
-            if(gc2.contains(c)) {
-                GeneConnection put = null;
-                switch(rand.nextInt(2)) {
-                    case 0: 
-                        put = new GeneConnection(cIn, cOut, c.getWeight(), c.getInnovation());
-                            put.setEnabled(c.isEnabled());
-                        out.putConnection(put);
-                        break;
-                    case 1: 
-                        GeneConnection temp = gc2.get(gc2.indexOf(c));
-                        put = new GeneConnection(cIn, cOut, temp.getWeight(), temp.getInnovation());
-                        out.putConnection(put);
-                        break;
-                }
+        ConnectionHolder a = g1.connections, b = g2.connections;
+        child.connections.ensureCapacity(a.size);
+        for(int i = 0, j = 0; i < a.size; ++i) {
+            int innovation = a.innovations[i];
+            while(j < b.size && b.innovations[j] < innovation) ++j;
+            GeneNode in = child.node(a.ins[i]), out = child.node(a.outs[i]);
+            GeneConnection put;
+            if(j < b.size && b.innovations[j] == innovation && rand.nextBoolean()) {
+                put = new GeneConnection(in, out, b.weights[j], innovation);
             } else {
-                GeneConnection put = new GeneConnection(cIn, cOut, c.getWeight(), c.getInnovation());
-                    put.setEnabled(c.isEnabled());
-                out.putConnection(put);
+                put = new GeneConnection(in, out, a.weights[i], innovation);
+                    put.setEnabled(a.enabled[i]);
             }
+            child.connections.putConnection(put); // In innovation order, so always added to the end
         }
         
-        return out;
+        return child;
     }
     
   //----------------------------------------------------------------------------
@@ -413,8 +913,8 @@ public class Genome implements Comparable{
         String out = "";
         
         out += "Nodes: ";
-            for(Integer i : nodes.keySet()) {
-                out += i + "-" + nodes.get(i);
+            for(int i = 0; i < nodeSize; ++i) {
+                out += nodeNums[i] + "-" + node(nodeNums[i]);
                 out += "  |  ";
             } out += '\n';
         out += "Connections: " + connections;
@@ -430,7 +930,7 @@ public class Genome implements Comparable{
         String out = "";
         
         out += "Nodes: ";
-        for(GeneNode n : nodes.values()) {
+        for(GeneNode n : getNodes()) {
             out += "(" + n.getNum() + " - " + n.getStage() + ")";
             out += " | ";
         } out += '\n';
@@ -441,21 +941,6 @@ public class Genome implements Comparable{
         return out;
     }
     
-    public void visualize(GenomeVisualizerInterface controller) {
-//        System.out.println("Begin Visualization");
-        
-        for(GeneConnection c : connections.getConnections()) {
-            if(c.isEnabled()) controller.drawConnection(c);
-        }
-        for(GeneNode n : nodes.values()) {
-//            System.out.println(n);
-            controller.drawNode(n);
-        }
-                
-//        System.out.println("Finish Visualization");
-        
-    }
-    
     private static Genome storedGenome = null;
     public static void storeGenome(Genome g) {
         storedGenome = g;
@@ -471,100 +956,4 @@ public class Genome implements Comparable{
         return Double.compare(score, check.getScore());
     }
     
-  //----------------------------------------------------------------------------
-  //----------------------------------------------------------------------------
-    
-    private class ConnectionHolder {
-        
-        private final Map<Integer,Map<Integer,GeneConnection>> connections = new HashMap<>();
-        
-        /**
-         * Puts a connection in the holder, returns false if already existing
-         * @param gc
-         * @return 
-         */
-        public boolean putConnection(GeneConnection gc) {
-            int in = gc.getIn().getNum(); // Index Code of In node
-            int out = gc.getOut().getNum(); // Index Code of Out node
-            Map<Integer,GeneConnection> inner = connections.get(in); // Grab inner map to store GeneConnection
-                if(inner != null) { // Check if inner map exists yet
-                    if(inner.get(out) != null) return false; // If inner map isn't null, check to make sure GeneConnection isn't already stored
-                } else { // If inner map is null, generate and store a new map for it
-                    inner = new HashMap<>();
-                    connections.put(in, inner);
-                } 
-                
-            inner.put(out, gc); 
-            return true;
-        }
-        
-        /**
-         * Returns a GeneConnection with the indicated In and Out nodes, or null if none exists
-         * @param in
-         * @param out
-         * @return 
-         */
-        public GeneConnection getConnection(int in, int out) {
-            Map<Integer,GeneConnection> inner = connections.get(in);
-                if(inner == null) return null;
-            return inner.get(out);
-        }
-        
-        /**
-         * Returns a random GeneConnection that has been stored
-         * @return 
-         */
-        public GeneConnection getRandomConnection() {
-            GeneConnection[] gcs = getConnections();
-                if(gcs.length == 0) return null;
-            GeneConnection out = gcs[rand.nextInt(gcs.length)];
-            return out;
-        }
-        
-        /**
-         * Returns all GeneConnections as an Array
-         * @return 
-         */
-        public GeneConnection[] getConnections() {
-            ArrayList<GeneConnection> out = new ArrayList<>();
-            
-            for(int i : connections.keySet()) {
-                for(GeneConnection g : connections.get(i).values()) {
-                    out.add(g);
-                }
-            }
-            
-            GeneConnection[] output = new GeneConnection[out.size()];
-            output = out.toArray(output);
-            return output;
-        }
-        
-        /**
-         * Returns an Enabled GeneConnection, or null if none are stored
-         * @return 
-         */
-        public GeneConnection getRandomEnabledConnection() {
-            GeneConnection[] gcs = getConnections();
-            ArrayList<GeneConnection> enabled = new ArrayList<>();
-            for(GeneConnection g : gcs) {
-                if(g.isEnabled()) enabled.add(g);
-            }
-            if(enabled.isEmpty()) return null;
-            return enabled.get(rand.nextInt(enabled.size()));
-        }
-        
-        @Override
-        public String toString() {
-            String out = "";
-            
-            for(GeneConnection g : getConnections()) {
-                out += g + " | ";
-            }
-            
-            if(out.length() >= 3) out = out.substring(0, out.length() - 3);
-            return out;
-        }
-        
-    }
-    
 }
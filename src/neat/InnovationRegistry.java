@@ -0,0 +1,419 @@
+
+package neat;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hands out innovation numbers for GeneConnections and nums for Hidden GeneNodes, and holds the one GeneNode of each num
+ * One registry is shared by every Genome of a run, and is safe to use from many threads at once
+ * Connections are numbered by (in, out) for the whole run, while Hidden Nodes are numbered by the connection they split, once per generation
+ * @author rewil
+ */
+public class InnovationRegistry {
+
+    private final AtomicInteger connectCount = new AtomicInteger();
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final InnovationMap connections = new InnovationMap();
+    private volatile InnovationMap splits = new InnovationMap();
+    private final InnovationMap splitNodes = new InnovationMap(); // First Hidden Node shared for each split (in << 32 | out), see findSplitNode()
+    private final InnovationMap nextSplitNodes = new InnovationMap(); // Next Hidden Node shared for the same split as each num, see findNextSplitNode()
+    private volatile int generation = 0;
+    private volatile GeneNode[] nodes = new GeneNode[64]; // Shared GeneNode of each num, see shareNode()
+    private final SplittableRandom random = new SplittableRandom(0); // Root of the default stream of each Genome, see splitRandom()
+
+    /**
+     * Generates a new registry with no nums reserved for Input or Output Nodes
+     */
+    public InnovationRegistry() {this(0);}
+    /**
+     * Generates a new registry where Hidden Node nums start after the given number of Input and Output Nodes
+     * @param reservedNodes
+     */
+    public InnovationRegistry(int reservedNodes) {
+        nodeCount.set(reservedNodes);
+    }
+    /**
+     * Generates a registry with the given counters, to be filled by restoreConnection and restoreSplit
+     * Used to restore a registry from a Checkpoint
+     * @param connectCount
+     * @param nodeCount
+     * @param generation 
+     */
+    InnovationRegistry(int connectCount, int nodeCount, int generation) {
+        this.connectCount.set(connectCount);
+        this.nodeCount.set(nodeCount);
+        this.generation = generation;
+    }
+
+    /**
+     * Returns the innovation number of a GeneConnection from in to out, assigning the next one if the pair is new
+     * @param in
+     * @param out
+     * @return
+     */
+    public int getConnectionInnovation(int in, int out) {
+        return connections.getOrAssign(((long) in << 32) | (out & 0xFFFFFFFFL), connectCount);
+    }
+
+    /**
+     * Returns the innovation number of a GeneConnection from in to out, or -1 if none has been assigned
+     * @param in
+     * @param out
+     * @return
+     */
+    public int findConnectionInnovation(int in, int out) {
+        return connections.find(((long) in << 32) | (out & 0xFFFFFFFFL));
+    }
+
+    /**
+     * Returns the num of the Hidden Node made by splitting the given connection innovation this generation
+     * Every Genome splitting the same connection in the same generation gets the same num
+     * @param splitInnovation
+     * @return
+     */
+    public int getNodeNum(int splitInnovation) {
+        return splits.getOrAssign(splitInnovation, nodeCount);
+    }
+
+    /**
+     * Returns the num of the Hidden Node made by splitting the given connection innovation this generation, or -1 if there is none yet
+     * @param splitInnovation
+     * @return
+     */
+    public int findNodeNum(int splitInnovation) {
+        return splits.find(splitInnovation);
+    }
+    /**
+     * Returns the num of the first Hidden Node shared that split a connection from in to out, in any generation, or -1 if there is none
+     * Built from the GeneNodes shared, so a registry read back from a Checkpoint knows the splits of every Genome read with it
+     * @param in
+     * @param out
+     * @return
+     */
+    public int findSplitNode(int in, int out) {
+        return splitNodes.find(((long) in << 32) | (out & 0xFFFFFFFFL));
+    }
+    /**
+     * Returns the num of the next Hidden Node shared that split the same connection as the given one, such as in a later generation, or -1 if there is none
+     * @param num
+     * @return
+     */
+    public int findNextSplitNode(int num) {
+        return num < 0 ? -1 : nextSplitNodes.find(num);
+    }
+    /**
+     * Returns a Hidden Node num never handed out before, for GeneNodes that do not come from a split in this registry, such as those of migrants
+     * @return
+     */
+    public int newNodeNum() {
+        return nodeCount.getAndIncrement();
+    }
+
+    /**
+     * Ensures that Hidden Nodes will never be given the num of a GeneNode that already exists
+     * @param num
+     */
+    public void reserveNode(int num) {
+        int count = nodeCount.get();
+        while(count <= num && !nodeCount.compareAndSet(count, num + 1)) count = nodeCount.get();
+    }
+
+    /**
+     * Returns the GeneNode every Genome of this registry uses for the given num, or null if none has been shared
+     * @param num
+     * @return 
+     */
+    public GeneNode getNode(int num) {
+        GeneNode[] table = nodes;
+        GeneNode out = num >= 0 && num < table.length ? table[num] : null;
+        return out != null ? out : findNode(num); // Another thread may be sharing it right now, GeneNodes are immutable so one seen here is whole
+    }
+    private synchronized GeneNode findNode(int num) {
+        return num >= 0 && num < nodes.length ? nodes[num] : null;
+    }
+    /**
+     * Returns the GeneNode shared under the num of the given one, sharing the given one if there is none yet
+     * The first GeneNode shared under a num keeps its stage and layout for the rest of the run
+     * @param node
+     * @return 
+     */
+    public synchronized GeneNode shareNode(GeneNode node) {
+        int num = node.getNum();
+        if(num < 0) throw new IllegalArgumentException("Temporary nums cannot be shared");
+        GeneNode[] table = nodes;
+        if(num >= table.length) table = Arrays.copyOf(table, Math.max(num + 1, table.length * 2));
+        if(table[num] == null) {
+            table[num] = node;
+            reserveNode(num);
+            if(node.isSplit() && node.getSplitIn() >= 0 && node.getSplitOut() >= 0) { // Under this lock, so no other thread is putting
+                long split = ((long) node.getSplitIn() << 32) | node.getSplitOut();
+                int last = splitNodes.find(split);
+                if(last < 0) splitNodes.put(split, num);
+                else {
+                    for(int next = nextSplitNodes.find(last); next >= 0; next = nextSplitNodes.find(last)) last = next;
+                    nextSplitNodes.put(last, num);
+                }
+            }
+        }
+        nodes = table; // Publishes the new entry to getNode()
+        return table[num];
+    }
+
+    /**
+     * Returns a new random stream split from the seeded one of this registry, which each Genome mutates with until given another
+     * Streams split in the same order are the same in every run, so Genomes made one at a time are reproducible without a seed of their own
+     * @return 
+     */
+    public synchronized SplittableRandom splitRandom() {
+        return random.split();
+    }
+
+    /**
+     * Moves to the next generation, so new splits of a connection make new Hidden Nodes
+     * Should not be called while Genomes are mutating
+     */
+    public void nextGeneration() {
+        splits = new InnovationMap();
+        ++generation;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+    /**
+     * Returns the number of connection innovation numbers handed out
+     * @return
+     */
+    public int getConnectionCount() {
+        return connectCount.get();
+    }
+    /**
+     * Returns the number of GeneNode nums reserved or handed out
+     * @return
+     */
+    public int getNodeCount() {
+        return nodeCount.get();
+    }
+
+    // Checkpointing
+    //<editor-fold>
+    /**
+     * Receives the entries of a registry, see visitConnections and visitSplits
+     */
+    interface EntryVisitor {
+        void visit(long key, int value);
+    }
+    
+    /**
+     * Passes every assigned connection to the visitor, keyed by (in << 32 | out)
+     * Should not be called while Genomes are mutating
+     * @param visitor 
+     */
+    void visitConnections(EntryVisitor visitor) {
+        connections.visit(visitor);
+    }
+    /**
+     * Passes every split made this generation to the visitor, keyed by the innovation split
+     * Should not be called while Genomes are mutating
+     * @param visitor 
+     */
+    void visitSplits(EntryVisitor visitor) {
+        splits.visit(visitor);
+    }
+    int getConnectionEntryCount() {
+        return connections.size();
+    }
+    int getSplitEntryCount() {
+        return splits.size();
+    }
+    void restoreConnection(long key, int value) {
+        connections.put(key, value);
+    }
+    void restoreSplit(long key, int value) {
+        splits.put(key, value);
+    }
+    //</editor-fold>
+    
+  //----------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+
+    /**
+     * Open addressing map from non-negative long keys to int values
+     * Lookups of existing keys take no lock; new keys claim a slot with a compare-and-set
+     * Inserts share a read lock so that growing the table, under the write lock, never loses one
+     */
+    private static class InnovationMap {
+
+        private static final long EMPTY = -1L;
+
+        private volatile Slots slots = new Slots(1024);
+        private final AtomicInteger size = new AtomicInteger();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /**
+         * Returns the value stored for key, or -1 if there is none
+         * @param key
+         * @return
+         */
+        public int find(long key) {
+            return slots.find(key);
+        }
+
+        /**
+         * Returns the value stored for key, or stores and returns the next value of counter if there is none
+         * @param key
+         * @param counter
+         * @return
+         */
+        public int getOrAssign(long key, AtomicInteger counter) {
+            Slots s = slots;
+            int found = s.find(key);
+            if(found >= 0) return found;
+
+            while(true) {
+                lock.readLock().lock();
+                try {
+                    s = slots;
+                    if(size.get() < s.threshold) {
+                        int mask = s.keys.length() - 1;
+                        int i = mix(key) & mask;
+                        while(true) {
+                            long k = s.keys.get(i);
+                            if(k == EMPTY) {
+                                if(!s.keys.compareAndSet(i, EMPTY, key)) continue; // Lost the slot, look at what took it
+                                int value = counter.getAndIncrement();
+                                s.values.set(i, value);
+                                size.incrementAndGet();
+                                return value;
+                            }
+                            if(k == key) return s.await(i);
+                            i = (i + 1) & mask;
+                        }
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+                grow(s);
+            }
+        }
+
+        public int size() {
+            return size.get();
+        }
+        
+        /**
+         * Stores the given value for key, as long as no other thread is using the map
+         * @param key
+         * @param value 
+         */
+        public void put(long key, int value) {
+            Slots s = slots;
+            if(size.get() >= s.threshold) {
+                grow(s);
+                s = slots;
+            }
+            int mask = s.keys.length() - 1;
+            int i = mix(key) & mask;
+            while(s.keys.get(i) != EMPTY && s.keys.get(i) != key) i = (i + 1) & mask;
+            if(s.keys.get(i) == EMPTY) size.incrementAndGet();
+            s.values.set(i, value);
+            s.keys.set(i, key);
+        }
+        
+        /**
+         * Passes every stored key and value to the visitor, as long as no other thread is using the map
+         * @param visitor 
+         */
+        public void visit(EntryVisitor visitor) {
+            Slots s = slots;
+            for(int i = 0; i < s.keys.length(); ++i) {
+                long k = s.keys.get(i);
+                if(k != EMPTY) visitor.visit(k, s.values.get(i));
+            }
+        }
+        
+        /**
+         * Doubles the table, unless another thread already replaced the given one
+         * @param old
+         */
+        private void grow(Slots old) {
+            lock.writeLock().lock();
+            try {
+                if(slots != old) return;
+                Slots grown = new Slots(old.keys.length() * 2);
+                int mask = grown.keys.length() - 1;
+                for(int j = 0; j < old.keys.length(); ++j) {
+                    long k = old.keys.get(j);
+                    if(k == EMPTY) continue;
+                    int i = mix(k) & mask;
+                    while(grown.keys.get(i) != EMPTY) i = (i + 1) & mask;
+                    grown.values.set(i, old.values.get(j));
+                    grown.keys.set(i, k);
+                }
+                slots = grown;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private static int mix(long key) {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ (key >>> 32));
+        }
+
+        /**
+         * One generation of the table, a power of two in length
+         */
+        private static class Slots {
+
+            private final AtomicLongArray keys;
+            private final AtomicIntegerArray values; // -1 while the thread that claimed the key is still assigning its value
+            private final int threshold;
+
+            public Slots(int capacity) {
+                keys = new AtomicLongArray(capacity);
+                values = new AtomicIntegerArray(capacity);
+                for(int i = 0; i < capacity; ++i) {
+                    keys.set(i, EMPTY);
+                    values.set(i, -1);
+                }
+                threshold = capacity / 2;
+            }
+
+            /**
+             * Returns the value stored for key, or -1 if there is none
+             * @param key
+             * @return
+             */
+            public int find(long key) {
+                int mask = keys.length() - 1;
+                int i = mix(key) & mask;
+                while(true) {
+                    long k = keys.get(i);
+                    if(k == EMPTY) return -1;
+                    if(k == key) return await(i);
+                    i = (i + 1) & mask;
+                }
+            }
+
+            /**
+             * Waits for the value of a claimed slot to be assigned, which takes only a few instructions
+             * @param i
+             * @return
+             */
+            public int await(int i) {
+                int value;
+                while((value = values.get(i)) < 0) Thread.yield();
+                return value;
+            }
+
+        }
+
+    }
+
+}
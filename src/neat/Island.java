@@ -0,0 +1,276 @@
+
+package neat;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * One population of an island model: a SpeciesManipulator evolving on its own, trading its fittest Genomes with other islands every few generations
+ * Islands may run in one JVM, each on its own thread, or in separate JVMs, as long as they share a MigrationTransport and have the same Inputs and Outputs
+ * Each island numbers its innovations in its own InnovationRegistry, so migrants are renumbered by structure as they arrive, see immigrate()
+ * @author rewil
+ */
+public class Island {
+
+    private final int id; // Unique among the linked islands
+    private final SpeciesManipulator sm;
+    private final MigrationTransport transport;
+
+    private int interval = 5; // Generations between migrations
+    private int migrants = 2; // Fittest Genomes sent each migration
+
+    private double[] scores = new double[0]; // Reused by emigrate()
+    private int[] picked = new int[0];
+
+    private long sent = 0;
+    private long received = 0;
+    private long rejected = 0; // Batches that could not be read
+
+    /**
+     * Generates an island evolving the given SpeciesManipulator, and migrating through the given transport
+     * @param id unique among the linked islands, so an island can drop its own batches
+     * @param sm
+     * @param transport
+     */
+    public Island(int id, SpeciesManipulator sm, MigrationTransport transport) {
+        this.id = id;
+        this.sm = sm;
+        this.transport = transport;
+    }
+
+    /**
+     * Sets how often the island migrates, and how many Genomes it sends each time
+     * @param interval generations between migrations, at least 1
+     * @param migrants
+     */
+    public void setMigration(int interval, int migrants) {
+        this.interval = Math.max(1, interval);
+        this.migrants = Math.max(0, migrants);
+    }
+
+    /**
+     * Runs one generation: sends the fittest Genomes if a migration is due, processes the SpeciesManipulator, then stores every migrant that has arrived
+     * Should be called after the Genomes are scored, like SpeciesManipulator.process(), so that the fittest are known
+     * Migrants join the population until the next trim(), and are scored along with it
+     * @param countMutations
+     * @throws IOException if the transport fails
+     */
+    public void process(int countMutations) throws IOException {
+        if(sm.getGeneration() % interval == 0) emigrate();
+        sm.process(countMutations);
+        immigrate();
+    }
+
+  //----------------------------------------------------------------------------
+
+    // Migration
+    //<editor-fold>
+    /**
+     * Sends the fittest Genomes of the island to every other island
+     * A batch is the id of this island and the number of Genomes, then the length and Checkpoint of each
+     * @throws IOException if the transport fails
+     */
+    public void emigrate() throws IOException {
+        Genome[] genomes = sm.getGenomes();
+        if(scores.length < genomes.length) {
+            scores = new double[genomes.length];
+            picked = new int[genomes.length];
+        }
+        for(int i = 0; i < genomes.length; ++i) scores[i] = genomes[i].getScore();
+        int count = Selections.truncate(scores, genomes.length, Math.min(migrants, genomes.length), picked, null);
+        if(count == 0) return;
+
+        ByteBuffer[] encoded = new ByteBuffer[count];
+        int length = 8;
+        for(int i = 0; i < count; ++i) {
+            encoded[i] = Checkpoint.encode(genomes[picked[i]]);
+            length += 4 + encoded[i].remaining();
+        }
+        ByteBuffer batch = ByteBuffer.allocate(length);
+        batch.putInt(id).putInt(count);
+        for(ByteBuffer b : encoded) batch.putInt(b.remaining()).put(b);
+        batch.flip();
+        transport.send(batch);
+        sent += count;
+    }
+
+    /**
+     * Stores every migrant waiting in the transport into the SpeciesManipulator, returning how many were stored
+     * Inputs and Outputs keep their nums, as every island reserves the same ones
+     * Each Hidden Node takes the local num of the first Hidden Node that split the same connection, between GeneNodes localized the same way, see InnovationRegistry.findSplitNode()
+     * Where a migrant splits one connection more than once, in different generations, its later Hidden Nodes take the later local nums of that split in turn
+     * A Hidden Node whose split has no local num yet is given a new one, which later arrivals of the same split then share
+     * So migrants line up with local Genomes made by the same splits, and a Genome sent away and back takes the first nums its home gave those splits, its own unless another Genome split the same connections first
+     * Hidden Nodes not made by a split, such as those put in by hand, are given new nums every time they arrive
+     * GeneConnections then take the local innovation number of their pair of nodes, so migrants line up with local Genomes in crossover and CompatibilityDistance
+     * Batches that cannot be read, or that come from islands with other Inputs or Outputs, are dropped and counted, see getRejected()
+     * @return
+     * @throws IOException if the transport fails
+     */
+    public int immigrate() throws IOException {
+        int out = 0;
+        for(ByteBuffer batch = transport.poll(); batch != null; batch = transport.poll()) {
+            Genome[] arrived;
+            try {
+                arrived = readBatch(batch);
+            } catch(IllegalArgumentException | BufferUnderflowException e) {
+                ++rejected;
+                continue;
+            }
+            for(Genome g : arrived) sm.storeGenome(g);
+            out += arrived.length;
+        }
+        received += out;
+        return out;
+    }
+    /**
+     * Decodes and checks every Genome of a batch before localizing any, so a batch rejected part way leaves no nums behind
+     * @param batch
+     * @return
+     */
+    private Genome[] readBatch(ByteBuffer batch) {
+        int origin = batch.getInt();
+        if(origin == id) throw new IllegalArgumentException("Batch claims to come from this island");
+        int count = batch.getInt();
+        if(count < 0 || count > batch.remaining() / 4) throw new IllegalArgumentException("Batch holds " + count + " Genomes");
+        InnovationRegistry foreign = new InnovationRegistry(); // The nums of the origin island, only consistent within this batch
+        Genome[] out = new Genome[count];
+        int[][] orders = new int[count][];
+        for(int i = 0; i < count; ++i) {
+            int length = batch.getInt();
+            if(length < 0 || length > batch.remaining()) throw new IllegalArgumentException("Genome runs past the end of its batch");
+            ByteBuffer genome = batch.slice();
+            genome.limit(length);
+            batch.position(batch.position() + length);
+            out[i] = Checkpoint.decodeGenome(genome, foreign);
+            orders[i] = check(out[i]);
+        }
+        for(int i = 0; i < count; ++i) out[i] = localize(out[i], orders[i]);
+        return out;
+    }
+    /**
+     * Throws IllegalArgumentException unless the given foreign Genome can be localized, returning the order to localize its GeneNodes in
+     * Its Inputs and Outputs must be the ones of this island, its GeneConnections must join its own GeneNodes, and so must the splits of its Hidden Nodes, without a loop
+     * @param g
+     * @return indices into its sorted GeneNodes, each Hidden Node after both ends of its split
+     */
+    private int[] check(Genome g) {
+        InnovationRegistry innovations = sm.getInnovationRegistry();
+        GeneNode[] nodes = g.getSortedNodes();
+        int[] nums = new int[nodes.length];
+        for(int i = 0; i < nodes.length; ++i) {
+            nums[i] = nodes[i].getNum();
+            if(nodes[i].getStage() == 1) continue;
+            GeneNode mine = innovations.getNode(nums[i]);
+            if(mine == null || mine.getStage() != nodes[i].getStage()) throw new IllegalArgumentException("Origin has different Inputs or Outputs");
+        }
+        ConnectionHolder genes = g.getConnectionHolder();
+        for(int i = 0; i < genes.size; ++i) {
+            if(Arrays.binarySearch(nums, genes.ins[i]) < 0 || Arrays.binarySearch(nums, genes.outs[i]) < 0) throw new IllegalArgumentException("Migrant connects a GeneNode it does not have");
+        }
+
+        int[] order = new int[nodes.length];
+        boolean[] placed = new boolean[nodes.length];
+        int size = 0;
+        for(int last = -1; size != last;) { // Nums mostly come after those of their split, so this takes few passes
+            last = size;
+            for(int i = 0; i < nodes.length; ++i) {
+                if(placed[i]) continue;
+                if(nodes[i].isSplit()) {
+                    int in = Arrays.binarySearch(nums, nodes[i].getSplitIn()), out = Arrays.binarySearch(nums, nodes[i].getSplitOut());
+                    if(in < 0 || out < 0) throw new IllegalArgumentException("Migrant split a connection between GeneNodes it does not have");
+                    if(!placed[in] || !placed[out]) continue;
+                }
+                placed[i] = true;
+                order[size++] = i;
+            }
+        }
+        if(size < nodes.length) throw new IllegalArgumentException("Migrant has Hidden Nodes splitting each other in a loop");
+        return order;
+    }
+    /**
+     * Copies a Genome decoded in the nums of the origin island into the InnovationRegistry of this one, see check() and immigrate()
+     * @param g
+     * @param order
+     * @return
+     */
+    private Genome localize(Genome g, int[] order) {
+        InnovationRegistry innovations = sm.getInnovationRegistry();
+        Genome out = new Genome(innovations);
+        out.setScore(g.getScore());
+        out.setMutability(g.getMutability());
+        out.setRecurrent(g.isRecurrent());
+        out.setFastActivation(g.isFastActivation());
+        out.setActivations(g.getActivations());
+
+        GeneNode[] nodes = g.getSortedNodes();
+        int[] nums = new int[nodes.length]; // Foreign nums in ascending order
+        GeneNode[] local = new GeneNode[nodes.length]; // Local GeneNode of each foreign num
+        for(int i = 0; i < nodes.length; ++i) nums[i] = nodes[i].getNum();
+        for(int i : order) { // Each Hidden Node after both ends of its split
+            GeneNode n = nodes[i];
+            int num;
+            if(n.getStage() != 1) {
+                num = n.getNum();
+                out.putNode(new GeneNode(num, n.getStage(), n.getX(), n.getY(), n.getColor()));
+            } else if(!n.isSplit()) {
+                num = innovations.newNodeNum();
+                out.putNode(new GeneNode(num, 1, n.getX(), n.getY(), n.getColor()));
+            } else {
+                int in = local[Arrays.binarySearch(nums, n.getSplitIn())].getNum(), to = local[Arrays.binarySearch(nums, n.getSplitOut())].getNum();
+                num = innovations.findSplitNode(in, to);
+                while(num >= 0 && out.getNode(num) != null) num = innovations.findNextSplitNode(num); // An earlier Hidden Node of this migrant split the same connection
+                if(num < 0) num = innovations.newNodeNum(); // Shared below under its split, so the next arrival finds it
+                out.putNode(new GeneNode(num, 1, n.getX(), n.getY(), n.getColor(), in, to));
+            }
+            local[i] = out.getNode(num);
+            out.setActivation(local[i], g.getActivation(n));
+        }
+
+        ConnectionHolder genes = g.getConnectionHolder();
+        out.getConnectionHolder().ensureCapacity(genes.size);
+        for(int i = 0; i < genes.size; ++i) {
+            GeneNode in = local[Arrays.binarySearch(nums, genes.ins[i])];
+            GeneNode to = local[Arrays.binarySearch(nums, genes.outs[i])];
+            GeneConnection c = new GeneConnection(in, to, genes.weights[i], innovations.getConnectionInnovation(in.getNum(), to.getNum()));
+            c.setEnabled(genes.enabled[i]);
+            out.putConnection(c);
+        }
+        return out;
+    }
+    //</editor-fold>
+
+    public int getId() {
+        return id;
+    }
+    public SpeciesManipulator getManipulator() {
+        return sm;
+    }
+    public MigrationTransport getTransport() {
+        return transport;
+    }
+    /**
+     * Returns the number of Genomes sent so far
+     * @return
+     */
+    public long getSent() {
+        return sent;
+    }
+    /**
+     * Returns the number of migrants stored so far
+     * @return
+     */
+    public long getReceived() {
+        return received;
+    }
+    /**
+     * Returns the number of batches dropped because they could not be read
+     * @return
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+}
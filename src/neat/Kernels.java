@@ -0,0 +1,35 @@
+
+package neat;
+
+/**
+ * Holds the BatchKernels, loading the SIMD one reflectively so the rest of the library runs without it
+ * @author rewil
+ */
+class Kernels {
+    
+    static final BatchKernel scalar = (values, stride, count, target, sources, weights, from, to) -> {
+        int t = target * stride;
+        for(int c = from; c < to; ++c) {
+            int s = sources[c] * stride;
+            double w = weights[c];
+            for(int k = 0; k < count; ++k) values[t + k] += values[s + k] * w;
+        }
+    };
+    static final BatchKernel vector = loadVector();
+    static volatile BatchKernel current = vector == null || "scalar".equals(System.getProperty("neat.kernel")) ? scalar : vector;
+    
+    private Kernels() {}
+    
+    /**
+     * Returns the SIMD kernel, or null if its class is missing, was built for a newer Java, or the vector module is not present
+     * @return 
+     */
+    private static BatchKernel loadVector() {
+        try {
+            return (BatchKernel) Class.forName("neat.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+    
+}
@@ -0,0 +1,112 @@
+
+package neat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Writes one line of GenerationMetrics per generation, as CSV or as JSON lines
+ * Each line is flushed as it is written, so a run can be watched while it goes
+ * @author rewil
+ */
+public class MetricsWriter implements GenerationListener, Closeable {
+    
+    public enum Format {
+        CSV,
+        JSON_LINES
+    }
+    
+    private final Writer writer;
+    private final Format format;
+    private boolean headed = false; // CSV header written
+    
+    public MetricsWriter(Writer writer, Format format) {
+        this.writer = writer;
+        this.format = format;
+    }
+    /**
+     * Generates a writer to a new file at the given path, replacing any file already there
+     * @param path
+     * @param format
+     * @return
+     * @throws IOException 
+     */
+    public static MetricsWriter open(Path path, Format format) throws IOException {
+        return new MetricsWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), format);
+    }
+    
+    @Override
+    public void generationProcessed(GenerationMetrics metrics) {
+        try {
+            if(format == Format.CSV) {
+                if(!headed) writer.write(line(metrics, true));
+                headed = true;
+            }
+            writer.write(line(metrics, false));
+            writer.flush();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Builds the CSV header, a CSV row, or a JSON object for the given metrics, ending in a newline
+     * @param m
+     * @param header
+     * @return 
+     */
+    private String line(GenerationMetrics m, boolean header) {
+        StringBuilder out = new StringBuilder();
+        field(out, header, "generation", m.getGeneration());
+        for(GenerationMetrics.Phase p : GenerationMetrics.Phase.values()) {
+            String name = p.name().toLowerCase(Locale.ROOT);
+            field(out, header, name + "Nanos", m.getPhaseNanos(p));
+            field(out, header, name + "Bytes", m.getPhaseBytes(p));
+        }
+        field(out, header, "evaluated", m.getEvaluated());
+        field(out, header, "evaluationNanos", m.getEvaluationNanos());
+        field(out, header, "evaluationsPerSecond", m.getEvaluationRate());
+        field(out, header, "cacheHits", m.getCacheHits());
+        field(out, header, "cacheHitRate", m.getCacheHitRate());
+        field(out, header, "species", m.getSpeciesCount());
+        field(out, header, "genomes", m.getGenomeCount());
+        field(out, header, "compatChecks", m.getCompatChecks());
+        for(MutationType t : MutationType.values()) {
+            field(out, header, "mutations" + camel(t.name()), m.getMutations(t));
+        }
+        field(out, header, "complexityMin", m.getMinComplexity());
+        field(out, header, "complexityMean", m.getMeanComplexity());
+        field(out, header, "complexityMedian", m.getComplexityPercentile(0.5));
+        field(out, header, "complexity90", m.getComplexityPercentile(0.9));
+        field(out, header, "complexityMax", m.getMaxComplexity());
+        if(format == Format.JSON_LINES) out.append('}');
+        return out.append('\n').toString();
+    }
+    private void field(StringBuilder out, boolean header, String name, Number value) {
+        boolean first = out.length() == 0;
+        if(format == Format.CSV) {
+            if(!first) out.append(',');
+            out.append(header ? name : value.toString());
+        } else {
+            out.append(first ? '{' : ',');
+            out.append('"').append(name).append("\":").append(value);
+        }
+    }
+    private static String camel(String constant) {
+        String out = "";
+        for(String word : constant.split("_")) out += word.charAt(0) + word.substring(1).toLowerCase(Locale.ROOT);
+        return out;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+    
+}
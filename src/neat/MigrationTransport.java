@@ -0,0 +1,57 @@
+
+package neat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries batches of migrant Genomes between Islands, see Island
+ * Every batch sent reaches every other island linked to this one, and batches may arrive in any order or not at all
+ * Use inMemory() for islands in one JVM, socket() for islands in separate JVMs or on separate hosts
+ * @author rewil
+ */
+public interface MigrationTransport extends Closeable {
+
+    /**
+     * Sends a batch to every other island, reading it from its position to its limit without moving either
+     * @param batch
+     * @throws IOException
+     */
+    void send(ByteBuffer batch) throws IOException;
+    /**
+     * Returns the next batch received, ready to be read from its position, or null if none is waiting
+     * Never blocks
+     * @return
+     * @throws IOException
+     */
+    ByteBuffer poll() throws IOException;
+
+    @Override
+    default void close() throws IOException {}
+
+    /**
+     * Returns one transport per island, each sending to all of the others through queues in memory
+     * Batches are shared rather than copied, so a batch must not be changed once sent
+     * @param islands
+     * @return
+     */
+    static MigrationTransport[] inMemory(int islands) {
+        return Migrations.Queue.link(islands);
+    }
+    /**
+     * Returns a transport listening for batches on the given port, and sending each of its own to every peer
+     * Batches are sent from a background thread, so a slow or dead peer never holds up the island
+     * A peer that cannot be reached, such as one not started yet, misses batches for a few seconds before it is tried again
+     * Batches are read from anyone who connects, so the port should only be open to trusted hosts
+     * @param port local port to listen on, which the peers list as this island
+     * @param peers addresses of the other islands
+     * @return
+     * @throws IOException if the port cannot be listened on
+     */
+    static MigrationTransport socket(int port, InetSocketAddress... peers) throws IOException {
+        return new Migrations.Sockets(port, peers);
+    }
+
+}
@@ -0,0 +1,198 @@
+
+package neat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the MigrationTransports made by the static methods of MigrationTransport
+ * @author rewil
+ */
+class Migrations {
+
+    private static final int maxBatch = 64 << 20; // Longer frames are taken as garbage, and the connection sending them is dropped
+    private static final int connectTimeout = 1000; // Milliseconds to wait for a peer before it misses a batch
+    private static final long retryDelay = 5_000_000_000L; // Nanoseconds a peer that could not be reached is skipped for
+    private static final int backlog = 16; // Batches waiting to be sent, the oldest is dropped beyond this
+
+    private Migrations() {}
+
+    /**
+     * Links islands in one JVM, each with its own queue of batches that every other island adds to
+     */
+    static class Queue implements MigrationTransport {
+
+        private final ConcurrentLinkedQueue<ByteBuffer> inbox = new ConcurrentLinkedQueue<>();
+        private Queue[] peers; // Every island linked, including this one
+
+        private Queue() {}
+
+        static Queue[] link(int islands) {
+            Queue[] out = new Queue[islands];
+            for(int i = 0; i < islands; ++i) out[i] = new Queue();
+            for(Queue q : out) q.peers = out;
+            return out;
+        }
+
+        @Override
+        public void send(ByteBuffer batch) {
+            for(Queue q : peers) {
+                if(q != this) q.inbox.add(batch.asReadOnlyBuffer()); // Each island reads its own view of the batch
+            }
+        }
+        @Override
+        public ByteBuffer poll() {
+            return inbox.poll();
+        }
+
+    }
+
+    /**
+     * Links islands over TCP, sending each batch as its length followed by its bytes
+     * Batches are sent from a daemon thread, and incoming connections are read on daemon threads into a queue, so neither send() nor poll() waits on the network
+     */
+    static class Sockets implements MigrationTransport {
+
+        private final ServerSocket server;
+        private final InetSocketAddress[] peers;
+        private final Socket[] links; // Outgoing connection to each peer, null until it is reached, only used by the sender
+        private final DataOutputStream[] outs;
+        private final long[] retryAt; // System.nanoTime() before which each peer is skipped, after it could not be reached
+        private final ThreadPoolExecutor sender;
+        private final ConcurrentLinkedQueue<ByteBuffer> inbox = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Socket> accepted = new ConcurrentLinkedQueue<>(); // Closed along with the transport
+        private volatile boolean closed = false;
+
+        Sockets(int port, InetSocketAddress[] peers) throws IOException {
+            this.server = new ServerSocket(port);
+            this.peers = peers.clone();
+            this.links = new Socket[peers.length];
+            this.outs = new DataOutputStream[peers.length];
+            this.retryAt = new long[peers.length];
+            Arrays.fill(retryAt, System.nanoTime()); // Every peer may be tried from the start
+            this.sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.NANOSECONDS, new ArrayBlockingQueue<>(backlog),
+                    r -> daemon(r, "NEAT migration sender " + port), new ThreadPoolExecutor.DiscardOldestPolicy());
+            daemon(this::accept, "NEAT migration listener " + port).start();
+        }
+
+        private static Thread daemon(Runnable task, String name) {
+            Thread t = new Thread(task, name);
+            t.setDaemon(true);
+            return t;
+        }
+
+        private void accept() {
+            while(!closed) {
+                try {
+                    Socket s = server.accept();
+                    accepted.add(s);
+                    daemon(() -> read(s), "NEAT migration reader " + s.getRemoteSocketAddress()).start();
+                } catch(IOException e) {
+                    if(server.isClosed()) return;
+                }
+            }
+        }
+        private void read(Socket s) {
+            try(DataInputStream in = new DataInputStream(s.getInputStream())) {
+                while(!closed) {
+                    int length = in.readInt();
+                    if(length < 0 || length > maxBatch) return;
+                    byte[] batch = new byte[length];
+                    in.readFully(batch);
+                    inbox.add(ByteBuffer.wrap(batch));
+                }
+            } catch(IOException e) {
+                // The peer went away, it reconnects when it next sends
+            } finally {
+                accepted.remove(s);
+            }
+        }
+
+        /**
+         * Queues a copy of the batch to be sent on the sender thread, dropping the oldest batch waiting if too many are
+         * @param batch
+         * @throws IOException if the transport is closed
+         */
+        @Override
+        public void send(ByteBuffer batch) throws IOException {
+            if(closed) throw new IOException("Transport is closed");
+            byte[] bytes = new byte[batch.remaining()];
+            batch.duplicate().get(bytes);
+            try {
+                sender.execute(() -> deliver(bytes));
+            } catch(RejectedExecutionException e) {
+                throw new IOException("Transport is closed", e);
+            }
+        }
+        /**
+         * Writes a batch to every peer not being skipped, on the sender thread
+         * A peer that cannot be reached misses the batch and is skipped for retryDelay, so one dead peer does not hold up the rest
+         * @param bytes
+         */
+        private void deliver(byte[] bytes) {
+            for(int i = 0; i < peers.length; ++i) {
+                if(links[i] == null && System.nanoTime() - retryAt[i] < 0) continue;
+                try {
+                    if(links[i] == null) {
+                        Socket s = new Socket();
+                        s.setTcpNoDelay(true);
+                        s.connect(peers[i], connectTimeout);
+                        links[i] = s;
+                        outs[i] = new DataOutputStream(s.getOutputStream());
+                    }
+                    outs[i].writeInt(bytes.length);
+                    outs[i].write(bytes);
+                    outs[i].flush();
+                } catch(IOException e) { // Migration is best effort, so the peer misses this batch
+                    drop(i);
+                    retryAt[i] = System.nanoTime() + retryDelay;
+                }
+            }
+        }
+        private void drop(int peer) {
+            try {
+                if(links[peer] != null) links[peer].close();
+            } catch(IOException e) {
+                // Already gone
+            }
+            links[peer] = null;
+            outs[peer] = null;
+        }
+        @Override
+        public ByteBuffer poll() {
+            return inbox.poll();
+        }
+
+        /**
+         * Stops listening, and gives batches already queued up to connectTimeout per peer to be sent before closing every connection
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            server.close();
+            sender.shutdown();
+            try {
+                if(!sender.awaitTermination((long) connectTimeout * (peers.length + 1), TimeUnit.MILLISECONDS)) sender.shutdownNow();
+            } catch(InterruptedException e) {
+                sender.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            for(int i = 0; i < peers.length; ++i) drop(i); // Also stops a send still running once shutdownNow() gave up on it
+            for(Socket s : accepted) s.close();
+        }
+
+    }
+
+}
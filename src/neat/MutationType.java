@@ -0,0 +1,15 @@
+
+package neat;
+
+/**
+ * The kinds of mutation Genome.mutate() can perform, in the order it rolls for them
+ * @author rewil
+ */
+public enum MutationType {
+    ADD_CONNECTION,
+    ADD_NODE,
+    TOGGLE_CONNECTION,
+    SHIFT_WEIGHT,
+    RANDOMIZE_WEIGHT,
+    CHANGE_ACTIVATION
+}
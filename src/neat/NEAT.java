@@ -1,12 +1,6 @@
 
 package neat;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import visualizer.GenomeVisualizer;
-
 /**
  *
  * @author rewil
@@ -33,30 +27,15 @@ public class NEAT {
         }
         
         Genome.storeGenome(sm.getSpecies()[0].getMascot());
-        GenomeVisualizer gv = new GenomeVisualizer();
         sm.setInputs(1,2,3,4,5,6,7,8,9,10);
-        gv.main(args);
-        
-    }
-    
-    private static Map<Integer, Map<Integer, Integer>> connectInnos = new HashMap<>();
-    private static int connectCount = 0;
-    
-    public static Integer getConnectInno(Integer in, Integer out) {
-        if(connectInnos.containsKey(in)) {
-            Map<Integer, Integer> temp = connectInnos.get(in);
-            if(temp.containsKey(out)) {
-                return temp.get(out);
-            } else {
-                temp.put(out, connectCount);
-                return connectCount++;
-            }
-        } else {
-            Map<Integer, Integer> temp = new HashMap<>();
-            connectInnos.put(in, temp);
-            temp.put(out, connectCount);
-            return connectCount++;
+        try { // The visualizer is only on the classpath when built with JavaFX, see build.xml
+            Class.forName("visualizer.GenomeVisualizer").getMethod("main", String[].class).invoke(null, (Object) args);
+        } catch(ClassNotFoundException | LinkageError e) { // Not built, or built without JavaFX to run it
+            System.out.println(sm.getSpecies()[0].getMascot());
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not start the visualizer", e);
         }
+        
     }
     
 }
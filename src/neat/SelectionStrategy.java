@@ -0,0 +1,56 @@
+
+package neat;
+
+import java.util.SplittableRandom;
+
+/**
+ * Picks which members of a Species survive SpeciesManipulator.trim()
+ * Works on the primitive scores of the members and writes the indexes of the survivors, so it needs no wrapper per Genome
+ * Use truncation() for the fittest members, tournament() or stochasticUniversal() to give weaker members a chance
+ * @author rewil
+ */
+public interface SelectionStrategy {
+
+    /**
+     * Picks up to count of the first size scores to survive, writing their indexes into the front of survivors, each at most once
+     * Survivors holds at least size ints, and its contents beyond what is written are not used
+     * Scores may be negative, and must be left as they are
+     * @param scores
+     * @param size
+     * @param count from 0 to size
+     * @param survivors
+     * @param rand stream to make any random choices with
+     * @return the number of survivors written
+     */
+    int select(double[] scores, int size, int count, int[] survivors, SplittableRandom rand);
+
+    /**
+     * Returns a strategy keeping the count highest scores, fittest first
+     * Ties are broken by index, later members first, as a stable sort of the members would
+     * The cutoff is found by quickselect, so only the survivors are sorted
+     * @return
+     */
+    static SelectionStrategy truncation() {
+        return Selections::truncate;
+    }
+    /**
+     * Returns a strategy that runs one tournament per survivor among the members not yet picked
+     * Each tournament draws size members at random, with replacement, and the highest score of them survives
+     * @param size number of members drawn per tournament, at least 1
+     * @return
+     */
+    static SelectionStrategy tournament(int size) {
+        if(size < 1) throw new IllegalArgumentException("Tournament size must be at least 1");
+        return (scores, count, keep, survivors, rand) -> Selections.tournament(scores, count, keep, survivors, rand, size);
+    }
+    /**
+     * Returns a strategy spacing count pointers evenly over the members laid end to end by score, from a random start
+     * Each member survives if any pointer lands on it, so fewer than count may survive when one member takes several pointers
+     * Scores are measured from the lowest one, and if they are all equal every member is as likely
+     * @return
+     */
+    static SelectionStrategy stochasticUniversal() {
+        return Selections::stochasticUniversal;
+    }
+
+}
@@ -0,0 +1,149 @@
+
+package neat;
+
+import java.util.SplittableRandom;
+
+/**
+ * Holds the SelectionStrategies made by the static methods of SelectionStrategy
+ * Members are ranked by score, and by index where scores are equal, so every ranking is total and does not depend on the algorithm
+ * @author rewil
+ */
+class Selections {
+
+    private static final int insertionSize = 16; // Ranges this short are sorted by insertion
+
+    private Selections() {}
+
+    static int truncate(double[] scores, int size, int count, int[] survivors, SplittableRandom rand) {
+        if(count <= 0) return 0;
+        for(int i = 0; i < size; ++i) survivors[i] = i;
+        if(count < size) select(scores, survivors, 0, size - 1, count - 1);
+        sort(scores, survivors, 0, count - 1);
+        return count;
+    }
+
+    static int tournament(double[] scores, int size, int count, int[] survivors, SplittableRandom rand, int entrants) {
+        for(int i = 0; i < size; ++i) survivors[i] = i;
+        for(int j = 0; j < count; ++j) { // Members from j on have not been picked yet
+            int best = j + rand.nextInt(size - j);
+            for(int t = 1; t < entrants; ++t) {
+                int c = j + rand.nextInt(size - j);
+                if(ranksAbove(scores, survivors[c], survivors[best])) best = c;
+            }
+            swap(survivors, j, best);
+        }
+        return Math.max(0, count);
+    }
+
+    static int stochasticUniversal(double[] scores, int size, int count, int[] survivors, SplittableRandom rand) {
+        if(count <= 0 || size == 0) return 0;
+        double min = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < size; ++i) if(scores[i] < min) min = scores[i];
+        double total = 0;
+        for(int i = 0; i < size; ++i) total += weight(scores[i], min);
+        boolean even = !(total > 0 && total < Double.POSITIVE_INFINITY); // All equal, or too large to space pointers over
+        if(even) total = size;
+
+        double step = total / count;
+        double pointer = rand.nextDouble() * step;
+        double edge = 0;
+        int written = 0;
+        for(int i = 0; i < size && written < count; ++i) {
+            edge += even ? 1 : weight(scores[i], min);
+            if(pointer < edge) {
+                survivors[written++] = i;
+                while(pointer < edge) pointer += step; // Any further pointers on this member are spent on it
+            }
+        }
+        return written;
+    }
+    private static double weight(double score, double min) {
+        double out = score - min;
+        return out > 0 ? out : 0; // NaN scores weigh nothing
+    }
+
+  //----------------------------------------------------------------------------
+
+    /**
+     * Returns if member a ranks above member b: a higher score, or an equal score and a higher index
+     * Follows Double.compare, so NaN ranks above everything
+     * @param scores
+     * @param a
+     * @param b
+     * @return
+     */
+    private static boolean ranksAbove(double[] scores, int a, int b) {
+        int c = Double.compare(scores[a], scores[b]);
+        return c > 0 || (c == 0 && a > b);
+    }
+    /**
+     * Rearranges the indexes from lo to hi so that the one at k has every higher ranked index before it, and every lower one after
+     * @param scores
+     * @param indexes
+     * @param lo
+     * @param hi
+     * @param k
+     */
+    private static void select(double[] scores, int[] indexes, int lo, int hi, int k) {
+        while(lo < hi) {
+            int p = partition(scores, indexes, lo, hi);
+            if(p == k) return;
+            if(k < p) hi = p - 1;
+            else lo = p + 1;
+        }
+    }
+    /**
+     * Sorts the indexes from lo to hi, highest ranked first
+     * @param scores
+     * @param indexes
+     * @param lo
+     * @param hi
+     */
+    private static void sort(double[] scores, int[] indexes, int lo, int hi) {
+        while(hi - lo > insertionSize) {
+            int p = partition(scores, indexes, lo, hi);
+            if(p - lo < hi - p) { // Recurse into the smaller side, so the stack stays shallow
+                sort(scores, indexes, lo, p - 1);
+                lo = p + 1;
+            } else {
+                sort(scores, indexes, p + 1, hi);
+                hi = p - 1;
+            }
+        }
+        for(int i = lo + 1; i <= hi; ++i) {
+            int at = indexes[i], j = i - 1;
+            while(j >= lo && ranksAbove(scores, at, indexes[j])) {
+                indexes[j + 1] = indexes[j];
+                --j;
+            }
+            indexes[j + 1] = at;
+        }
+    }
+    /**
+     * Partitions the indexes from lo to hi around the median of the first, middle and last, returning where it ends up
+     * @param scores
+     * @param indexes
+     * @param lo
+     * @param hi
+     * @return
+     */
+    private static int partition(double[] scores, int[] indexes, int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        if(ranksAbove(scores, indexes[mid], indexes[lo])) swap(indexes, lo, mid);
+        if(ranksAbove(scores, indexes[hi], indexes[lo])) swap(indexes, lo, hi);
+        if(ranksAbove(scores, indexes[hi], indexes[mid])) swap(indexes, mid, hi);
+        swap(indexes, mid, hi); // The median is the pivot, kept at hi while partitioning
+        int pivot = indexes[hi], store = lo;
+        for(int i = lo; i < hi; ++i) {
+            if(ranksAbove(scores, indexes[i], pivot)) swap(indexes, i, store++);
+        }
+        swap(indexes, store, hi);
+        return store;
+    }
+    private static void swap(int[] indexes, int a, int b) {
+        int t = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = t;
+    }
+
+}
@@ -0,0 +1,84 @@
+
+package neat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Snapshot of the mascots of a list of Species, used to find the first Species a Genome fits in
+ * Mascot gene counts and innovation ranges are kept in flat arrays, so most Species are ruled out without touching their mascot
+ * Mascots must not change while the index is in use
+ * @author rewil
+ */
+class SpeciationIndex {
+    
+    private Species[] species;
+    private int[] sizes; // Number of genes of each mascot
+    private int[] firsts; // Lowest innovation number of each mascot
+    private int[] lasts; // Highest innovation number of each mascot
+    private double[] thresholds;
+    private int count = 0;
+    private final LongAdder checks; // Counts compatibility checks made, or null when not counting
+    
+    public SpeciationIndex(List<Species> species) {this(species, null);}
+    public SpeciationIndex(List<Species> species, LongAdder checks) {
+        this.checks = checks;
+        int capacity = Math.max(16, species.size() * 2);
+        this.species = new Species[capacity];
+        sizes = new int[capacity];
+        firsts = new int[capacity];
+        lasts = new int[capacity];
+        thresholds = new double[capacity];
+        for(Species s : species) add(s);
+    }
+    
+    /**
+     * Adds a Species to the end of the index
+     * @param s 
+     */
+    public void add(Species s) {
+        if(count == species.length) {
+            int grown = count * 2;
+            species = Arrays.copyOf(species, grown);
+            sizes = Arrays.copyOf(sizes, grown);
+            firsts = Arrays.copyOf(firsts, grown);
+            lasts = Arrays.copyOf(lasts, grown);
+            thresholds = Arrays.copyOf(thresholds, grown);
+        }
+        ConnectionHolder genes = s.getMascot().getConnectionHolder();
+        species[count] = s;
+        sizes[count] = genes.size;
+        firsts[count] = genes.size == 0 ? 0 : genes.innovations[0];
+        lasts[count] = genes.size == 0 ? 0 : genes.innovations[genes.size - 1];
+        thresholds[count] = s.getCompatVariance();
+        ++count;
+    }
+    
+    public int size() {
+        return count;
+    }
+    public Species get(int i) {
+        return species[i];
+    }
+    
+    /**
+     * Returns the index of the first Species from index from up to index to that the given Genome fits in, or -1 if there is none
+     * Safe to call from many threads at once, as long as none are adding Species
+     * @param g
+     * @param from
+     * @param to
+     * @return 
+     */
+    public int findFirst(Genome g, int from, int to) {
+        ConnectionHolder genes = g.getConnectionHolder();
+        int size = genes.size;
+        for(int i = from; i < to; ++i) {
+            if(!CompatibilityDistance.mayBeWithin(sizes[i], size, thresholds[i])) continue; // Exact check would also reject, this just skips loading the mascot
+            if(checks != null) checks.increment();
+            if(CompatibilityDistance.within(species[i].getMascot(), g, thresholds[i])) return i;
+        }
+        return -1;
+    }
+    
+}
@@ -1,8 +1,8 @@
 
 package neat;
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
 
 /**
  *
@@ -11,39 +11,108 @@ import java.util.Random;
 public class Species {
     
     private Genome mascot = null;
-    private ArrayList<Genome> members = new ArrayList<>();
+    private Genome[] members = new Genome[4]; // The first size are the members, those this Species owns knowing their own index, see Genome.memberIndex
+    private int size = 0;
+    private boolean shared = false; // Some member has since been added to another Species, so isMember() has to search for it
     private final double compatVariance = 1.5d;
     private double totalFitness = 0d;
     
     public Species(Genome mascot) {
         this.mascot = mascot;
-        members.add(mascot);
+        addMember(mascot);
+    }
+    /**
+     * Generates a Species with the given members, in order, and the Total Fitness it had when it was saved
+     * Used to restore a Species from a Checkpoint
+     * @param mascot
+     * @param members
+     * @param totalFitness 
+     */
+    Species(Genome mascot, Genome[] members, double totalFitness) {
+        this.mascot = mascot;
+        addMembers(members, 0, members.length);
+        this.totalFitness = totalFitness;
     }
     
     /**
-     * Adds a Genome to the list of members of the Species
+     * Adds a Genome to the list of members of the Species, unless it already is one
+     * The Species a Genome was last added to owns it, and knows it is a member without searching
      * @param member 
      */
     public void addMember(Genome member) {
-        if(members.contains(member)) return;
-        members.add(member);
+        if(isMember(member)) return;
+        if(member.species != null) member.species.shared = true; // Still a member there, but no longer owned by it
+        if(size == members.length) members = Arrays.copyOf(members, size * 2);
+        member.species = this;
+        member.memberIndex = size;
+        members[size++] = member;
+    }
+    /**
+     * Adds the Genomes from index from to index to of the given array, following addMember(Genome)
+     * @param genomes
+     * @param from
+     * @param to 
+     */
+    public void addMembers(Genome[] genomes, int from, int to) {
+        if(size + to - from > members.length) members = Arrays.copyOf(members, Math.max(size + to - from, size * 2));
+        for(int i = from; i < to; ++i) addMember(genomes[i]);
+    }
+    /**
+     * Removes a Genome from the members of the Species, returning false if it was not one
+     * The last member takes its place, so removing does not keep the order of members
+     * @param member
+     * @return 
+     */
+    public boolean removeMember(Genome member) {
+        int at = member.species == this ? member.memberIndex : indexOfShared(member);
+            if(at < 0) return false;
+        Genome last = members[--size];
+        members[at] = last;
+        if(last.species == this) last.memberIndex = at;
+        members[size] = null;
+        if(member.species == this) member.species = null;
+        return true;
+    }
+    /**
+     * Returns the index of a member owned by another Species, or -1 if it is not a member
+     * Only searches if a member has ever been added to another Species, which SpeciesManipulator never leaves in a live Species
+     * @param check
+     * @return 
+     */
+    private int indexOfShared(Genome check) {
+        if(!shared) return -1;
+        for(int i = 0; i < size; ++i) if(members[i] == check) return i;
+        return -1;
     }
     
     /**
      * Empties the list of members of the species, but maintains mascot
+     * Keeps the storage of the list, so filling it again to the same size allocates nothing
      */
     public void resetList() {
-        members = new ArrayList<>();
-        members.add(mascot);
+        for(int i = 0; i < size; ++i) if(members[i].species == this) members[i].species = null;
+        Arrays.fill(members, 0, size, null);
+        size = 0;
+        shared = false;
+        addMember(mascot);
     }
     
     /**
      * Returns an array of all members of the species
+     * Copies the members, use size() and getMember(int) to go through them without allocating
      * @return 
      */
     public Genome[] getMembers() {
-        Genome[] out = new Genome[members.size()];
-        return members.toArray(out);
+        return Arrays.copyOf(members, size);
+    }
+    /**
+     * Returns the member at the given index, from 0 to size()
+     * @param index
+     * @return 
+     */
+    public Genome getMember(int index) {
+        if(index >= size) throw new IndexOutOfBoundsException("Member " + index + " of " + size);
+        return members[index];
     }
     
     /**
@@ -52,7 +121,7 @@ public class Species {
      * @return 
      */
     public boolean isMember(Genome check) {
-        return members.contains(check);
+        return check.species == this || indexOfShared(check) >= 0;
     }
     
     /**
@@ -60,7 +129,7 @@ public class Species {
      * @return 
      */
     public int size() {
-        return members.size();
+        return size;
     }
     
     /**
@@ -78,14 +147,14 @@ public class Species {
         int index = 0;
         double max = Double.NEGATIVE_INFINITY;
         
-        for(int i = 0; i < members.size(); ++i) {
-            if(members.get(i).getScore() > max) {
+        for(int i = 0; i < size; ++i) {
+            if(members[i].getScore() > max) {
                 index = i;
-                max = members.get(i).getScore();
+                max = members[i].getScore();
             }
         }
         
-        return members.get(index);
+        return members[index];
     }
     
     /**
@@ -104,75 +173,37 @@ public class Species {
      * @return 
      */
     public boolean isCompatible(Genome check) {
-        final double value1 = 1d; // Sets weight of Excess Connections
-        final double value2 = 1d; // Sets weight of Disjoint Connections
-        final double value3 = 1d; // Sets weight of Average Weight Differential
-        
-        GeneConnection[] masCons = mascot.getConnections();
-        GeneConnection[] checkCons = check.getConnections();
-        int excess = 0;
-        int disjoint = 0;
-        int matching = 0;
-        double weightDiff = 0;
-        int size = Math.max(masCons.length, checkCons.length);
-            size = size < 20 ? 20 : size;
-        
-        int indexM = 0;
-        int indexC = 0;
-        while(indexM < masCons.length || indexC < checkCons.length) {
-            boolean excessM = indexC == checkCons.length;
-            boolean excessC = indexM == masCons.length;
-            if(!excessM && !excessC) { // In progress through both lists of Connections
-                GeneConnection mCon = masCons[indexM];
-                GeneConnection cCon = checkCons[indexC];
-                switch(mCon.compareTo(cCon)) {
-                    case -1:
-                        ++indexM;
-                        ++disjoint;
-                        break;
-                    case 0:
-                        ++indexM; ++indexC;
-                        ++matching;
-                        weightDiff += Math.abs(mCon.getWeight() - cCon.getWeight());
-                        break;
-                    case 1:
-                        ++indexC;
-                        ++disjoint;
-                        break;
-                }
-            } else {
-                if(excessM) { // No more Connections in Check
-                    ++indexM;
-                    ++excess;
-                } else { // No more Connections in Mascot
-                    ++indexC;
-                    ++excess;
-                }
-            }
-        }
-        
-        double compatDistance = 0;
-            compatDistance += ((value1 * excess) / size); // Add weighted value of Excess connections
-            compatDistance += ((value2 * disjoint) / size); // Add weighted value of Disjoint cnnections
-            compatDistance += (value3 * (weightDiff / matching)); // Add weighted value of Average Weight Differential
-
-//        System.out.println(compatDistance);
-        return compatDistance < compatVariance;
+        return CompatibilityDistance.within(mascot, check, compatVariance);
+    }
+    /**
+     * Returns the largest compatibility distance from the mascot that still fits in the species
+     * @return 
+     */
+    public double getCompatVariance() {
+        return compatVariance;
+    }
+    /**
+     * Returns the compatibility distance between the mascot and the given Genome
+     * @param check
+     * @return 
+     */
+    public double getDistance(Genome check) {
+        return CompatibilityDistance.between(mascot, check);
     }
     
     /**
      * Runs the calculate method of each stored Genome
      */
     public void calculateGenomes() {
-        for(Genome g : members) g.calculate();
+        for(int i = 0; i < size; ++i) members[i].calculate();
     }
     /**
      * Calculates the Adjusted Fitness of the members of the species, then totals it for the species
      */
     public void calculateFitness() {
-        for(Genome g : members) {
-            g.setScore(g.getScore() / members.size());
-            totalFitness += g.getScore();
+        for(int i = 0; i < size; ++i) {
+            members[i].setScore(members[i].getScore() / size);
+            totalFitness += members[i].getScore();
         }
     }
     /**
@@ -180,7 +211,7 @@ public class Species {
      * @return 
      */
     public double getAverageFitness() {
-        return totalFitness / members.size();
+        return totalFitness / size;
     }
     /**
      * Returns the Total Fitness of all members
@@ -194,18 +225,47 @@ public class Species {
      * Creates a new Genome by breeding two random Genomes together and adds it to the species
      */
     public void breedRandom() {
+        breedRandom(null);
+    }
+    /**
+     * Breeds two random Genomes together into the given spare Genome and adds it to the species
+     * A null spare breeds into a new Genome
+     * Parents and genes are picked with the random stream of the spare, as in Genome.crossover(Genome, Genome, Genome), so a seeded spare breeds the same Genome every run
+     * @param spare Genome no longer used anywhere else, which is emptied and refilled
+     */
+    public void breedRandom(Genome spare) {
+        if(spare == null) spare = new Genome(getMascot().getInnovationRegistry());
+        breedRandom(spare, spare.getRandom());
+    }
+    /**
+     * Breeds two random Genomes together into the given spare Genome and adds it to the species
+     * Parents and genes are both picked with the given random stream, so a seeded stream always breeds the same Genome
+     * @param spare Genome no longer used anywhere else, which is emptied and refilled, or null to breed into a new Genome
+     * @param rand 
+     */
+    public void breedRandom(Genome spare, SplittableRandom rand) {
+        addMember(breed(spare, rand));
+    }
+    /**
+     * Breeds two random members together into the given spare Genome, or a new one if spare is null, without adding it
+     * Only reads the members, so many threads may breed from one Species at once as long as none change it
+     * @param spare
+     * @param rand
+     * @return the bred Genome
+     */
+    Genome breed(Genome spare, SplittableRandom rand) {
         Genome g1 , g2;
-        Random rand = new Random();
-        g1 = members.get(rand.nextInt(members.size()));
-        g2 = members.get(rand.nextInt(members.size()));
-        addMember(Genome.crossover(g1, g2));
+        g1 = members[rand.nextInt(size)];
+        g2 = members[rand.nextInt(size)];
+        if(spare == null) spare = new Genome(g1.getInnovationRegistry());
+        return Genome.crossover(g1, g2, spare, rand);
     }
     
     /**
      * Mutates each genome in the Species
      */
     public void mutate() {
-        for(Genome g : members) g.mutate();
+        for(int i = 0; i < size; ++i) members[i].mutate();
     }
     
     /**
@@ -215,8 +275,8 @@ public class Species {
      */
     public double getAverageComplexity() {
         double weight = 0;
-        for(Genome g : members) weight += g.getComplexity();
-        weight /= members.size();
+        for(int i = 0; i < size; ++i) weight += members[i].getComplexity();
+        weight /= size;
         return weight;
     }
     
@@ -227,8 +287,8 @@ public class Species {
      * @param inputs 
      */
     public void setInputs(int... inputs) {
-        for(Genome g : members) {
-            g.setInputs(inputs);
+        for(int i = 0; i < size; ++i) {
+            members[i].setInputs(inputs);
         }
     }
     
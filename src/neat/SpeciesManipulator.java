@@ -1,8 +1,23 @@
 
 package neat;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  *
@@ -14,6 +29,34 @@ public class SpeciesManipulator {
     private final double percentTrim; // From 0 to 1
     
     private ArrayList<Species> species = new ArrayList<>();
+    private final InnovationRegistry innovations;
+    
+    private ForkJoinPool pool = null; // Pool Genomes are evaluated on, or null to evaluate on the calling thread
+    
+    private Executor evaluationExecutor = null; // Executor FitnessEvaluators run on, or null to use the pool
+    private int maxConcurrentEvaluations = 0; // Calls to a FitnessEvaluator unfinished at once, 0 for no limit
+    private Semaphore evaluationPermits = null; // One per call to a FitnessEvaluator that may be unfinished, kept across evaluate() calls, null for no limit
+    private final ConcurrentHashMap<Genome,Integer> abandoned = new ConcurrentHashMap<>(); // Genomes of timed out calls still running, with how many, never recycled
+    private long batchTimeout = 0; // Nanoseconds a call to a FitnessEvaluator may take, 0 for no limit
+    private double timeoutScore = 0; // Score given to Genomes whose evaluation timed out
+    private boolean recycling = false; // Breed into trimmed Genomes rather than new ones
+    private final ArrayDeque<Genome> spares = new ArrayDeque<>(); // Trimmed Genomes waiting to be bred into by refill()
+    
+    private SelectionStrategy selection = SelectionStrategy.truncation(); // Picks the members of each Species that survive trim()
+    private Genome[] trimMembers = new Genome[0]; // Scratch for trim(), grown to the largest Species
+    private double[] trimScores = new double[0];
+    private int[] trimSurvivors = new int[0];
+    
+    private FitnessCache fitnessCache = null; // Scores looked up before evaluating with a FitnessEvaluator, or null to evaluate everything
+    
+    private long seed = new Random().nextLong();
+    private int generation = 0;
+    private SplittableRandom random; // Derived from seed and generation at the start of each generation
+    private long randomUses = 0; // Streams split off random this generation, so a Checkpoint can wind random back to where it was
+    
+    private final ArrayList<GenerationListener> listeners = new ArrayList<>();
+    private int metricListeners = 0; // Listeners attached that need metrics
+    private GenerationMetrics metrics = null; // Metrics of the generation under way, only gathered while a listener needs them
     
     /**
      * Generates a new Species Manipulator with the given number of inputs and outputs
@@ -30,8 +73,21 @@ public class SpeciesManipulator {
      * @param countGenomes
      * @param percentTrim 
      */
-    public SpeciesManipulator(int inputs, int outputs, int countGenomes, double percentTrim) {
+    public SpeciesManipulator(int inputs, int outputs, int countGenomes, double percentTrim) {this(inputs, outputs, countGenomes, percentTrim, new InnovationRegistry(inputs + outputs));}
+    /**
+     * Generates a new Species Manipulator with the given number of inputs and outputs
+     * Uses passed in countGenomes for number of genomes and percentTrim in range 0-1 to determine trim percentage
+     * All Genomes take innovation numbers and Hidden Node nums from the given registry
+     * @param inputs
+     * @param outputs
+     * @param countGenomes
+     * @param percentTrim
+     * @param innovations 
+     */
+    public SpeciesManipulator(int inputs, int outputs, int countGenomes, double percentTrim, InnovationRegistry innovations) {
         this.countGenomes = countGenomes;
+        this.innovations = innovations;
+        this.random = getGenerationRandom();
         this.percentTrim = percentTrim % 1;
         GeneNode[] nodes = new GeneNode[inputs + outputs];
             for(int i = 0; i < inputs + outputs; ++i) {
@@ -39,25 +95,235 @@ public class SpeciesManipulator {
             }
         Genome[] genomes = new Genome[countGenomes];
         for(int i = 0; i < countGenomes; ++i) {
-            genomes[i] = new Genome();
-            GeneNode[] clones = new GeneNode[nodes.length];
-                for(int j = 0; j < nodes.length; ++j) {
-                    clones[j] = nodes[j].clone();
-                }
-            genomes[i].putNodes(clones);
+            genomes[i] = new Genome(innovations);
+            genomes[i].putNodes(nodes); // Shared through the InnovationRegistry, so every Genome holds the same GeneNodes
         }
         
         for(Genome g : genomes) storeGenome(g);
     }
+    /**
+     * Generates a Species Manipulator holding the given Species, partway through the given generation
+     * Used to restore a Species Manipulator from a Checkpoint
+     * @param countGenomes
+     * @param percentTrim
+     * @param innovations
+     * @param species
+     * @param seed
+     * @param generation
+     * @param randomUses 
+     */
+    SpeciesManipulator(int countGenomes, double percentTrim, InnovationRegistry innovations, ArrayList<Species> species, long seed, int generation, long randomUses) {
+        this.countGenomes = countGenomes;
+        this.percentTrim = percentTrim;
+        this.innovations = innovations;
+        this.species = species;
+        this.seed = seed;
+        this.generation = generation;
+        this.random = getGenerationRandom();
+        for(long i = 0; i < randomUses; ++i) splitRandom();
+    }
     
     public void putSpecies(Species s) {
         species.add(s);
     }
     
+    public InnovationRegistry getInnovationRegistry() {
+        return innovations;
+    }
+    
+    /**
+     * Sets the seed that the random streams of every generation are derived from
+     * Two runs from the same seed breed and mutate identically, whatever the parallelism, as long as scores are the same
+     * @param seed 
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        random = getGenerationRandom();
+        randomUses = 0;
+    }
+    public long getSeed() {
+        return seed;
+    }
+    /**
+     * Returns the number of generations processed so far
+     * @return 
+     */
+    public int getGeneration() {
+        return generation;
+    }
+    /**
+     * Returns a generator depending only on the seed and the current generation
+     * @return 
+     */
+    private SplittableRandom getGenerationRandom() {
+        return new SplittableRandom(seed ^ new SplittableRandom(generation).nextLong());
+    }
+    /**
+     * Splits a new stream off the generation random, counting it so a Checkpoint can record how far along the generation is
+     * @return 
+     */
+    private SplittableRandom splitRandom() {
+        ++randomUses;
+        return random.split();
+    }
+    long getRandomUses() {
+        return randomUses;
+    }
+    
+    public int getCountGenomes() {
+        return countGenomes;
+    }
+    public double getPercentTrim() {
+        return percentTrim;
+    }
+    
+    /**
+     * Sets if every Genome stored may evolve connections that loop back, see Genome.step()
+     * Bred Genomes take the setting from their parents
+     * @param recurrent 
+     */
+    public void setRecurrent(boolean recurrent) {
+        for(Genome g : getGenomes()) g.setRecurrent(recurrent);
+    }
+    
+    /**
+     * Sets the activation functions every Genome stored evolves with, and gives the first to every Hidden and Output Node
+     * Meant to be called before evolving, see Genome.setActivations()
+     * @param choices 
+     */
+    public void setActivations(Activation... choices) {
+        for(Genome g : getGenomes()) {
+            g.setActivations(choices);
+            for(GeneNode n : g.getNodes()) if(n.getStage() != 0) g.setActivation(n, choices[0]);
+        }
+    }
+    /**
+     * Sets if every Genome stored is evaluated with the fast, table based forms of activation functions
+     * @param fast 
+     */
+    public void setFastActivation(boolean fast) {
+        for(Genome g : getGenomes()) g.setFastActivation(fast);
+    }
+    
+    /**
+     * Attaches a listener that is given the metrics of every generation processed from now on
+     * Metrics are only gathered while at least one attached listener needs them, see GenerationListener.needsMetrics()
+     * @param listener 
+     */
+    public void addListener(GenerationListener listener) {
+        listeners.add(listener);
+        if(listener.needsMetrics() && metricListeners++ == 0) metrics = new GenerationMetrics(generation);
+    }
+    public void removeListener(GenerationListener listener) {
+        if(listeners.remove(listener) && listener.needsMetrics() && --metricListeners == 0) metrics = null;
+    }
+    
     public Species[] getSpecies() {
         Species[] out = new Species[species.size()];
         return species.toArray(out);
     }
+    /**
+     * Returns every Genome of every Species stored, in Species order
+     * @return 
+     */
+    public Genome[] getGenomes() {
+        Genome[] out = new Genome[getGenomeCount()];
+        int i = 0;
+        for(Species s : species) {
+            for(int j = 0; j < s.size(); ++j) out[i++] = s.getMember(j);
+        }
+        return out;
+    }
+    
+    /**
+     * Sets the number of threads Genomes are evaluated on
+     * A parallelism of 1 or less evaluates everything on the calling thread
+     * @param parallelism 
+     */
+    public void setParallelism(int parallelism) {
+        if(pool != null && pool != ForkJoinPool.commonPool()) pool.shutdown();
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+    /**
+     * Sets the pool Genomes are evaluated on, such as ForkJoinPool.commonPool()
+     * A null pool evaluates everything on the calling thread
+     * @param pool 
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+    /**
+     * Sets the executor FitnessEvaluators run their blocking work on, such as FitnessEvaluator.virtualThreads()
+     * A null executor uses the pool, or the calling thread if there is no pool
+     * @param executor 
+     */
+    public void setEvaluationExecutor(Executor executor) {
+        evaluationExecutor = executor;
+    }
+    public Executor getEvaluationExecutor() {
+        return evaluationExecutor;
+    }
+    /**
+     * Sets the number of calls to a FitnessEvaluator that may be unfinished at once
+     * A call that timed out keeps its place until its work really ends, so once max calls hang, evaluate() waits for one of them
+     * A max of 0 or less sets no limit, and a new max applies to calls started from then on
+     * @param max 
+     */
+    public void setMaxConcurrentEvaluations(int max) {
+        maxConcurrentEvaluations = Math.max(0, max);
+        evaluationPermits = maxConcurrentEvaluations > 0 ? new Semaphore(maxConcurrentEvaluations) : null;
+    }
+    public int getMaxConcurrentEvaluations() {
+        return maxConcurrentEvaluations;
+    }
+    /**
+     * Sets how long one call to a FitnessEvaluator, scoring one batch, may take before every Genome of the batch is given timeoutScore instead
+     * The timeout covers the whole batch, so with FitnessEvaluator.batch() one slow Genome times out the rest of its batch, and with a batch size of 1 it is a timeout per Genome
+     * A timeout of 0 or less sets no limit
+     * @param timeout
+     * @param unit
+     * @param timeoutScore 
+     */
+    public void setBatchTimeout(long timeout, TimeUnit unit, double timeoutScore) {
+        batchTimeout = Math.max(0, unit.toNanos(timeout));
+        this.timeoutScore = timeoutScore;
+    }
+    /**
+     * Sets if Genomes removed by trim() are kept and bred into by refill(), rather than refill() making new ones
+     * Recycled Genomes keep the capacity of their storage, so a population that has stopped growing breeds with little garbage
+     * Nothing outside this SpeciesManipulator should hold on to a Genome across process() while recycling, as a trimmed Genome is rebuilt in place
+     * @param recycling 
+     */
+    public void setRecycling(boolean recycling) {
+        this.recycling = recycling;
+        if(!recycling) spares.clear();
+    }
+    public boolean isRecycling() {
+        return recycling;
+    }
+    
+    /**
+     * Sets the cache looked up before evaluating with a FitnessEvaluator, so copies of Genomes already scored are not evaluated again
+     * Only suited to fitness functions that always give the same Genome the same score
+     * A null cache evaluates every Genome
+     * @param cache 
+     */
+    public void setFitnessCache(FitnessCache cache) {
+        fitnessCache = cache;
+    }
+    public FitnessCache getFitnessCache() {
+        return fitnessCache;
+    }
+    /**
+     * Returns the number of threads Genomes are evaluated on
+     * @return 
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
     /**
      * Returns the number of Species stored
      * @return 
@@ -117,7 +383,10 @@ public class SpeciesManipulator {
      */
     public void storeGenome(Genome g) {
         boolean speciated = false;
+        int size = g.getConnectionHolder().size;
         for(Species s : species) {
+            if(!CompatibilityDistance.mayBeWithin(s.getMascot().getConnectionHolder().size, size, s.getCompatVariance())) continue; // Counted like SpeciationIndex.findFirst()
+            if(metrics != null) metrics.getCompatCounter().increment();
             if(s.isCompatible(g)) {
                 s.addMember(g);
                 speciated = true;
@@ -128,33 +397,83 @@ public class SpeciesManipulator {
     }
     
     /**
-     * Performs the mutate command on each Species stored
+     * Performs one round of mutation on every Genome stored
      */
     public void mutate() {
-        for(Species s : species) s.mutate();
+        mutate(1);
+    }
+    /**
+     * Performs the given number of rounds of mutation on every Genome stored, in parallel if a pool has been set
+     * Each Genome mutates with its own random stream split off in Genome order, and new innovations are numbered
+     * afterwards in that same order, so the result for a given seed does not depend on the number of threads
+     * @param rounds 
+     */
+    public void mutate(int rounds) {
+        Genome[] genomes = getGenomes();
+        for(Genome g : genomes) g.setRandom(splitRandom());
+        if(metrics != null) {
+            for(Genome g : genomes) g.mutationCounts = new int[MutationType.values().length];
+        }
+        forEach(genomes, g -> g.mutateStaged(rounds));
+        for(Genome g : genomes) g.commitInnovations();
+        if(metrics != null) {
+            for(Genome g : genomes) {
+                metrics.addMutations(g.mutationCounts);
+                g.mutationCounts = null;
+            }
+        }
     }
     
     /**
      * Trims a percent of Genomes from each species equal to the class-variable percentTrim
      * A value of 1 will remove everything except the Mascot
+     * Survivors are picked by the SelectionStrategy from the scores alone, fittest first by default, see setSelection()
      */
     public void trim() {
 //        calculate(); // Used for testing purposes only, usually
+        SplittableRandom rand = splitRandom(); // Shared by every Species in order, for strategies that make random choices
         for(Species s : species) {
             s.calculateFitness();
-            Genome[] g = s.getMembers(); 
-                Arrays.sort(g);
+            int size = s.size();
+            if(trimMembers.length < size) {
+                trimMembers = new Genome[size];
+                trimScores = new double[size];
+                trimSurvivors = new int[size];
+            }
+            for(int i = 0; i < size; ++i) {
+                trimMembers[i] = s.getMember(i);
+                trimScores[i] = trimMembers[i].getScore();
+            }
+            int kept = selection.select(trimScores, size, size - (int) (size * percentTrim), trimSurvivors, rand);
             s.resetList();
-            int cap = (int) (g.length * percentTrim); 
-            for(int i = g.length - 1; i >= cap; --i) {
-                s.addMember(g[i]);
+            for(int i = 0; i < kept; ++i) {
+                s.addMember(trimMembers[trimSurvivors[i]]);
+            }
+            if(recycling) {
+                for(int i = 0; i < size; ++i) {
+                    if(!s.isMember(trimMembers[i]) && !abandoned.containsKey(trimMembers[i])) spares.push(trimMembers[i]); // The Mascot stays, see resetList(), and Genomes still being evaluated are not rebuilt under it
+                }
             }
         }
+        Arrays.fill(trimMembers, null); // So trimmed Genomes not kept as spares can be collected
+    }
+    
+    /**
+     * Sets the strategy picking the members of each Species that survive trim(), or null to go back to truncation, the default
+     * @param selection 
+     */
+    public void setSelection(SelectionStrategy selection) {
+        this.selection = selection == null ? SelectionStrategy.truncation() : selection;
+    }
+    public SelectionStrategy getSelection() {
+        return selection;
     }
     
     /**
      * Calculates the number of Genomes needed to restore count to class variable countGenomes
-     * Breeds randomly within species to refill 
+     * Breeds randomly within species to refill, with parents picked only from the Genomes that survived trim()
+     * Every new Genome gets a slot, a spare and its own random stream in order first, then they are bred in parallel if a pool has been set
+     * and added to their Species together, so refilling is reproducible from the seed whatever the parallelism
      */
     public void refill() {
         int space = countGenomes - getGenomeCount();
@@ -162,9 +481,20 @@ public class SpeciesManipulator {
         double[] fitnesses = getFitnesses();
         int[] allotment = tuneAllotments(getAllotments(fitnesses, totalFitness, space), space);
         
+        int[] starts = new int[allotment.length + 1]; // Slots of Species i run from starts[i] to starts[i + 1]
+        for(int i = 0; i < allotment.length; ++i) starts[i + 1] = starts[i] + Math.max(0, allotment[i]);
+        Species[] parents = new Species[starts[allotment.length]];
+        Genome[] children = new Genome[parents.length];
+        SplittableRandom[] streams = new SplittableRandom[parents.length];
         for(int i = 0; i < allotment.length; ++i) {
-            for(int j = 0; j < allotment[i]; ++j) species.get(i).breedRandom();
+            for(int k = starts[i]; k < starts[i + 1]; ++k) {
+                parents[k] = species.get(i);
+                children[k] = spares.poll(); // Null when not recycling, or out of spares
+                streams[k] = splitRandom();
+            }
         }
+        forEachIndex(parents.length, k -> children[k] = parents[k].breed(children[k], streams[k]));
+        for(int i = 0; i < allotment.length; ++i) species.get(i).addMembers(children, starts[i], starts[i + 1]);
     }   
         private double getTotalFitness() {
             double out = 0;
@@ -217,43 +547,226 @@ public class SpeciesManipulator {
         }
         
     /**
-     * Runs the calculateGenomes method of each species stored
+     * Runs the calculate method of every Genome stored, in parallel if a pool has been set
      */
     public void calculate() {
-        for(Species s : species) {s.calculateGenomes();}
+        evaluate(Genome::calculate);
+    }
+    /**
+     * Runs the given evaluation on every Genome stored, in parallel if a pool has been set
+     * The evaluation is expected to set inputs, calculate, read outputs, and score the one Genome it is given
+     * Each Genome owns its own input and output values, so evaluations of different Genomes share no state
+     * @param evaluation 
+     */
+    public void evaluate(Consumer<Genome> evaluation) {
+        if(metrics == null) {
+            forEachGenome(evaluation);
+            return;
+        }
+        Genome[] genomes = getGenomes();
+        long start = System.nanoTime();
+        forEach(genomes, evaluation);
+        metrics.addEvaluation(genomes.length, System.nanoTime() - start);
+    }
+    
+    /**
+     * Scores every Genome stored with the given FitnessEvaluator, returning once every score is in
+     * Genomes are handed over in batches of the evaluator's batch size, with no more than maxConcurrentEvaluations unfinished at once
+     * A batch that takes longer than the batch timeout scores timeoutScore, and is abandoned rather than stopped,
+     * so an evaluator that may time out should not keep using its Genomes once it has; they are not recycled until it stops
+     * If a FitnessCache is set, Genomes it holds a score for are not evaluated, and nor are copies of a Genome evaluated this generation
+     * @param evaluator 
+     * @throws CompletionException if the evaluator failed for any Genome, after every other batch has finished
+     */
+    public void evaluate(FitnessEvaluator evaluator) {
+        Genome[] all = getGenomes();
+        long start = System.nanoTime();
+        if(fitnessCache == null) {
+            dispatch(all, evaluator);
+            if(metrics != null) metrics.addEvaluation(all.length, System.nanoTime() - start);
+            return;
+        }
+        
+        ArrayList<Genome> unscored = new ArrayList<>();
+        HashMap<Long,Genome> firsts = new HashMap<>(); // First Genome of each hash not found in the cache
+        ArrayList<Genome> copies = new ArrayList<>(); // Pairs of a later copy and the first Genome it copies
+        for(Genome g : all) {
+            long hash = g.getStructuralHash();
+            Genome first = firsts.get(hash);
+            if(first != null) {
+                copies.add(g);
+                copies.add(first);
+                continue;
+            }
+            if(!fitnessCache.score(g)) {
+                firsts.put(hash, g);
+                unscored.add(g);
+            }
+        }
+        dispatch(unscored.toArray(new Genome[unscored.size()]), evaluator);
+        for(int i = 0; i < copies.size(); i += 2) copies.get(i).setScore(copies.get(i + 1).getScore());
+        if(metrics != null) {
+            metrics.addEvaluation(unscored.size(), System.nanoTime() - start);
+            metrics.addCacheHits(all.length - unscored.size());
+        }
+    }
+    /**
+     * Hands the given Genomes to the evaluator in batches, bounded and timed as evaluate(FitnessEvaluator) describes
+     * Scores that arrive in time are stored in the FitnessCache, if one is set
+     * @param genomes
+     * @param evaluator 
+     */
+    private void dispatch(Genome[] genomes, FitnessEvaluator evaluator) {
+        FitnessCache cache = fitnessCache;
+        Executor executor = evaluationExecutor != null ? evaluationExecutor : pool != null ? pool : Runnable::run;
+        Semaphore permits = evaluationPermits;
+        int size = Math.max(1, evaluator.getBatchSize());
+        
+        CompletableFuture<?>[] batches = new CompletableFuture<?>[(genomes.length + size - 1) / size];
+        for(int b = 0; b < batches.length; ++b) {
+            Genome[] batch = Arrays.copyOfRange(genomes, b * size, Math.min(genomes.length, (b + 1) * size));
+            if(permits != null) permits.acquireUninterruptibly();
+            CompletableFuture<double[]> running;
+            try {
+                running = evaluator.evaluate(batch, executor);
+            } catch(RuntimeException e) {
+                running = new CompletableFuture<>();
+                running.completeExceptionally(e);
+            }
+            if(permits != null) running.whenComplete((s, error) -> permits.release()); // Only once the work has really ended, even if it timed out long before
+            CompletableFuture<double[]> call = running;
+            CompletableFuture<double[]> scores = batchTimeout > 0 ? Evaluations.within(running, batchTimeout) : running;
+            batches[b] = scores.handle((s, error) -> {
+                if(error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+                if(error instanceof TimeoutException) {
+                    for(Genome g : batch) {
+                        g.setScore(timeoutScore);
+                        abandoned.merge(g, 1, Integer::sum);
+                    }
+                    call.whenComplete((late, e) -> {
+                        for(Genome g : batch) abandoned.computeIfPresent(g, (k, n) -> n == 1 ? null : n - 1);
+                    });
+                } else if(error != null) {
+                    throw new CompletionException(error);
+                } else if(s.length != batch.length) {
+                    throw new IllegalStateException("FitnessEvaluator gave " + s.length + " scores for " + batch.length + " Genomes");
+                } else {
+                    for(int i = 0; i < batch.length; ++i) {
+                        batch[i].setScore(s[i]);
+                        if(cache != null) cache.put(batch[i]);
+                    }
+                }
+                return null;
+            });
+        }
+        CompletableFuture.allOf(batches).join();
+    }
+    
+    /**
+     * Runs the given action on every Genome stored, split across the pool if one has been set
+     * @param action 
+     */
+    private void forEachGenome(Consumer<Genome> action) {
+        forEach(getGenomes(), action);
+    }
+    /**
+     * Runs the given action on each of the given Genomes, split across the pool if one has been set
+     * @param genomes
+     * @param action 
+     */
+    private void forEach(Genome[] genomes, Consumer<Genome> action) {
+        forEachIndex(genomes.length, i -> action.accept(genomes[i]));
+    }
+    /**
+     * Runs the given action on every index from 0 to count, split across the pool if one has been set
+     * @param count
+     * @param action 
+     */
+    private void forEachIndex(int count, IntConsumer action) {
+        if(pool == null) {
+            for(int i = 0; i < count; ++i) action.accept(i);
+            return;
+        }
+        int grain = Math.max(1, count / (pool.getParallelism() * 8)); // Several tasks per thread to even out uneven Genomes
+        pool.invoke(new RangeTask(0, count, grain, action));
     }
         
     /**
      * Reorganizes Genomes into Species following the compatVariance variable in the Species class
+     * Gives the same Species as calling storeGenome on the old mascots and then every other Genome in order,
+     * but finds each Genome's place among the Species made from the mascots in parallel, and only places the rest in order
      */
     public void respeciate() {
         ArrayList<Genome> genomes = new ArrayList<>();
         ArrayList<Genome> mascots = new ArrayList<>();
         for(Species s : species) {
-            for(Genome g : s.getMembers()) {
-                genomes.add(g);
+            for(int i = 0; i < s.size(); ++i) {
+                if(s.getMember(i) != s.getMascot()) genomes.add(s.getMember(i));
             }
-            genomes.remove(s.getMascot());
             mascots.add(s.getMascot());
         } species = new ArrayList<>();
         for(Genome g : mascots) {
             storeGenome(g);
         }
-        for(Genome g : genomes) {
-            storeGenome(g);
+        
+        SpeciationIndex index = new SpeciationIndex(species, metrics == null ? null : metrics.getCompatCounter());
+        int initial = index.size();
+        Genome[] rest = genomes.toArray(new Genome[genomes.size()]);
+        int[] found = new int[rest.length];
+        forEachIndex(rest.length, i -> found[i] = index.findFirst(rest[i], 0, initial));
+        for(int i = 0; i < rest.length; ++i) { // Genomes fitting no early Species are compared against the ones made since, in order
+            int s = found[i] >= 0 ? found[i] : index.findFirst(rest[i], initial, index.size());
+            if(s >= 0) {
+                index.get(s).addMember(rest[i]);
+            } else {
+                Species made = new Species(rest[i]);
+                species.add(made);
+                index.add(made);
+            }
         }
     }
     
     /**
-     * Performs trim, fill, mutate, and respeciate in order
+     * Performs trim, fill, mutate, and respeciate in order, then moves on to the next generation
      * Mutate is performed the specified number of times
+     * Attached listeners are given the metrics of the generation once it is done
      * @param countMutations 
      */
     public void process(int countMutations) {
-        trim(); 
-        refill();
-        for(int i = 0; i < countMutations; ++i) mutate();
-        respeciate();
+        if(metrics == null) {
+            trim(); 
+            refill();
+            mutate(countMutations);
+            respeciate();
+        } else {
+            runPhase(GenerationMetrics.Phase.TRIM, this::trim);
+            runPhase(GenerationMetrics.Phase.REFILL, this::refill);
+            runPhase(GenerationMetrics.Phase.MUTATE, () -> mutate(countMutations));
+            runPhase(GenerationMetrics.Phase.RESPECIATE, this::respeciate);
+        }
+        innovations.nextGeneration();
+        ++generation;
+        random = getGenerationRandom();
+        randomUses = 0;
+        
+        GenerationMetrics done = metrics;
+        if(done != null) {
+            done.finish(getSpecies(), getGenomes());
+            metrics = new GenerationMetrics(generation);
+        }
+        for(GenerationListener l : listeners) l.generationProcessed(done);
+    }
+    /**
+     * Runs one phase of process(), recording its wall time and the bytes allocated by every thread while it ran
+     * @param phase
+     * @param action 
+     */
+    private void runPhase(GenerationMetrics.Phase phase, Runnable action) {
+        long bytes = GenerationMetrics.allocatedBytes();
+        long start = System.nanoTime();
+        action.run();
+        long nanos = System.nanoTime() - start;
+        metrics.addPhase(phase, nanos, bytes < 0 ? -1 : GenerationMetrics.allocatedBytes() - bytes);
     }
     
     /**
@@ -263,9 +776,16 @@ public class SpeciesManipulator {
      * @param inputs 
      */
     public void setInputs(int... inputs) {
-        for(Species s : species) {
-            s.setInputs(inputs);
-        }
+        forEachGenome(g -> g.setInputs(inputs));
+    }
+    /**
+     * Set input values of All Genomes in All Species to given double array
+     * If given array is larger than number of inputs, then trailing values will be ignored
+     * If given array is smaller than number of inputs, then remaining inputs will be set to 0
+     * @param inputs 
+     */
+    public void setInputs(double... inputs) {
+        forEachGenome(g -> g.setInputs(inputs));
     }
     
     
@@ -281,4 +801,36 @@ public class SpeciesManipulator {
         return out;
     }
     
+  //----------------------------------------------------------------------------
+  //----------------------------------------------------------------------------
+    
+    /**
+     * Splits a range of indexes in half until it is no larger than grain, then runs action on each index in it
+     */
+    private static class RangeTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int from, to, grain;
+        private final IntConsumer action;
+        
+        public RangeTask(int from, int to, int grain, IntConsumer action) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.action = action;
+        }
+        
+        @Override
+        protected void compute() {
+            if(to - from <= grain) {
+                for(int i = from; i < to; ++i) action.accept(i);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, grain, action), new RangeTask(middle, to, grain, action));
+        }
+        
+    }
+    
 }
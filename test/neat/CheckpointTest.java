@@ -0,0 +1,118 @@
+
+package neat;
+
+import java.nio.ByteBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Round trips Genomes, Species and SpeciesManipulators through Checkpoint, and feeds it truncated and corrupted input
+ * @author rewil
+ */
+public class CheckpointTest {
+
+    private static final FitnessEvaluator fitness = FitnessEvaluator.sync(g -> g.getComplexity());
+
+    /**
+     * Returns a scored SpeciesManipulator that has evolved a few generations, so its Genomes have Hidden Nodes and its Species several members
+     * @return
+     */
+    private static SpeciesManipulator evolved() {
+        SpeciesManipulator sm = new SpeciesManipulator(3, 2, 40, 0.5);
+        sm.setSeed(11);
+        for(int i = 0; i < 5; ++i) {
+            sm.evaluate(fitness);
+            sm.process(20);
+        }
+        sm.evaluate(fitness);
+        return sm;
+    }
+    private static byte[] bytes(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.duplicate().get(out);
+        return out;
+    }
+
+    @Test
+    public void encodeDecodeEncodeIsIdentical() {
+        SpeciesManipulator sm = evolved();
+        byte[] encoded = bytes(Checkpoint.encode(sm));
+        assertArrayEquals("SpeciesManipulator", encoded, bytes(Checkpoint.encode(Checkpoint.decodeManipulator(ByteBuffer.wrap(encoded)))));
+
+        for(Genome g : sm.getGenomes()) {
+            encoded = bytes(Checkpoint.encode(g));
+            assertArrayEquals("Genome", encoded, bytes(Checkpoint.encode(Checkpoint.decodeGenome(ByteBuffer.wrap(encoded), sm.getInnovationRegistry()))));
+        }
+        for(Species s : sm.getSpecies()) {
+            encoded = bytes(Checkpoint.encode(s));
+            assertArrayEquals("Species", encoded, bytes(Checkpoint.encode(Checkpoint.decodeSpecies(ByteBuffer.wrap(encoded), sm.getInnovationRegistry()))));
+        }
+    }
+
+    @Test
+    public void restoredManipulatorCarriesOnTheSame() {
+        SpeciesManipulator sm = evolved();
+        SpeciesManipulator restored = Checkpoint.decodeManipulator(Checkpoint.encode(sm));
+        for(int i = 0; i < 3; ++i) {
+            sm.process(20);
+            restored.process(20);
+            sm.evaluate(fitness);
+            restored.evaluate(fitness);
+            assertArrayEquals("Generation " + (i + 1) + " after restoring", bytes(Checkpoint.encode(sm)), bytes(Checkpoint.encode(restored)));
+        }
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        SpeciesManipulator sm = evolved();
+        byte[] whole = bytes(Checkpoint.encode(sm));
+        for(int length = 0; length < whole.length; ++length) {
+            try {
+                Checkpoint.decodeManipulator(ByteBuffer.wrap(whole, 0, length));
+                throw new AssertionError("Read a checkpoint cut to " + length + " of " + whole.length + " bytes");
+            } catch(IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        whole = bytes(Checkpoint.encode(sm.getGenomes()[0]));
+        for(int length = 0; length < whole.length; ++length) {
+            try {
+                Checkpoint.decodeGenome(ByteBuffer.wrap(whole, 0, length), sm.getInnovationRegistry());
+                throw new AssertionError("Read a Genome cut to " + length + " of " + whole.length + " bytes");
+            } catch(IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void corruptedInputIsReadOrRejected() {
+        SpeciesManipulator sm = evolved();
+        byte[] whole = bytes(Checkpoint.encode(sm));
+        int rejected = 0;
+        for(int i = 0; i < whole.length; ++i) { // Any other exception fails the test
+            for(int flip : new int[]{0x01, 0x80, 0xFF}) {
+                byte[] corrupt = whole.clone();
+                corrupt[i] ^= (byte) flip;
+                try {
+                    Checkpoint.decodeManipulator(ByteBuffer.wrap(corrupt));
+                } catch(IllegalArgumentException e) {
+                    ++rejected;
+                }
+            }
+        }
+        assertTrue(rejected > 0);
+
+        ByteBuffer version = ByteBuffer.wrap(whole.clone());
+        version.put(4, (byte) 2);
+        try {
+            Checkpoint.decodeManipulator(version);
+            throw new AssertionError("Read a checkpoint of an unknown version");
+        } catch(IllegalArgumentException e) {
+            assertEquals("Unsupported checkpoint version 2", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+
+package neat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Runs SpeciesManipulator.evaluate against an evaluator whose calls hang until released
+ * @author rewil
+ */
+public class EvaluationTest {
+
+    private static final int population = 6;
+    private static final int max = 2;
+    private static final double timeoutScore = -1;
+
+    @Test
+    public void hungBatchesKeepTheirPermits() throws Exception {
+        SpeciesManipulator sm = new SpeciesManipulator(3, 2, population, 0.5);
+        sm.setMaxConcurrentEvaluations(max);
+        sm.setBatchTimeout(20, TimeUnit.MILLISECONDS, timeoutScore);
+
+        CountDownLatch hang = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        AtomicInteger started = new AtomicInteger();
+        ExecutorService threads = Executors.newCachedThreadPool();
+        FitnessEvaluator evaluator = (genomes, executor) -> CompletableFuture.supplyAsync(() -> {
+            started.incrementAndGet();
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                hang.await(); // Never completes on its own, and ignores the timeout
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return new double[]{1};
+        }, threads);
+
+        Thread evaluating = new Thread(() -> sm.evaluate(evaluator));
+        evaluating.start();
+        Thread.sleep(300); // Many timeouts long, so freed permits would have let more calls start
+        assertEquals("Calls started while the first ones hang", max, started.get());
+        assertEquals("Calls running while the first ones hang", max, peak.get());
+        assertTrue(evaluating.isAlive());
+
+        hang.countDown();
+        evaluating.join(10_000);
+        threads.shutdown();
+        assertTrue(!evaluating.isAlive());
+        assertEquals("Calls started", population, started.get());
+        assertTrue(peak.get() <= max);
+        int timedOut = 0;
+        for(Genome g : sm.getGenomes()) if(g.getScore() == timeoutScore) ++timedOut;
+        assertEquals("Genomes given the timeout score", max, timedOut);
+    }
+
+}
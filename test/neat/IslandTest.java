@@ -0,0 +1,125 @@
+
+package neat;
+
+import java.nio.ByteBuffer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Feeds whole, truncated and corrupted batches of migrants through an in-memory transport
+ * @author rewil
+ */
+public class IslandTest {
+
+    private static final int inputs = 3;
+    private static final int outputs = 2;
+
+    /**
+     * Returns a scored SpeciesManipulator that has evolved a few generations, so its Genomes have Hidden Nodes
+     * @return
+     */
+    private static SpeciesManipulator evolved() {
+        SpeciesManipulator sm = new SpeciesManipulator(inputs, outputs, 40, 0.5);
+        sm.setSeed(7);
+        for(int i = 0; i < 5; ++i) {
+            sm.evaluate(FitnessEvaluator.sync(g -> g.getComplexity()));
+            sm.process(20);
+        }
+        sm.evaluate(FitnessEvaluator.sync(g -> g.getComplexity()));
+        return sm;
+    }
+    /**
+     * Returns a batch of migrants from an island that has evolved a few generations
+     * @return
+     */
+    private static byte[] batch() throws Exception {
+        MigrationTransport[] link = MigrationTransport.inMemory(2);
+        Island from = new Island(0, evolved(), link[0]);
+        from.emigrate();
+        ByteBuffer sent = link[1].poll();
+        byte[] out = new byte[sent.remaining()];
+        sent.get(out);
+        return out;
+    }
+
+    /**
+     * Sends the given bytes to a fresh island, returning it once it has tried to store them
+     * @param bytes
+     * @return
+     */
+    private static Island receive(byte[] bytes) throws Exception {
+        MigrationTransport[] link = MigrationTransport.inMemory(2);
+        Island to = new Island(1, new SpeciesManipulator(inputs, outputs, 40, 0.5), link[1]);
+        link[0].send(ByteBuffer.wrap(bytes));
+        to.immigrate();
+        return to;
+    }
+
+    @Test
+    public void wholeBatchIsStored() throws Exception {
+        Island to = receive(batch());
+        assertEquals(2, to.getReceived());
+        assertEquals(0, to.getRejected());
+    }
+
+    @Test
+    public void migrantsKeepTheirNumsByStructure() throws Exception {
+        MigrationTransport[] link = MigrationTransport.inMemory(2);
+        SpeciesManipulator home = evolved();
+        Island a = new Island(0, home, link[0]);
+        Island b = new Island(1, new SpeciesManipulator(inputs, outputs, 40, 0.5), link[1]);
+        a.emigrate();
+        assertEquals(2, b.immigrate());
+        int nodes = b.getManipulator().getInnovationRegistry().getNodeCount();
+        assertTrue(nodes > inputs + outputs);
+
+        a.emigrate(); // The same migrants again take the nums they were given the first time
+        assertEquals(2, b.immigrate());
+        assertEquals("Nums after the same migrants arrived again", nodes, b.getManipulator().getInnovationRegistry().getNodeCount());
+
+        int homeNodes = home.getInnovationRegistry().getNodeCount();
+        b.emigrate(); // The migrants, as the fresh Genomes of b are unscored
+        assertEquals(2, a.immigrate());
+        assertEquals("Nums after migrants came home", homeNodes, home.getInnovationRegistry().getNodeCount());
+    }
+
+    @Test
+    public void truncatedBatchesAreRejected() throws Exception {
+        byte[] whole = batch();
+        for(int length = 0; length < whole.length; ++length) {
+            byte[] cut = new byte[length];
+            System.arraycopy(whole, 0, cut, 0, length);
+            Island to = receive(cut);
+            assertEquals("Cut to " + length + " bytes", 1, to.getRejected());
+            assertEquals(0, to.getReceived());
+            assertEquals("Nums leaked at " + length + " bytes", inputs + outputs, to.getManipulator().getInnovationRegistry().getNodeCount());
+        }
+    }
+
+    @Test
+    public void corruptedBatchesAreRejected() throws Exception {
+        byte[] whole = batch();
+        int activations = 8 + 4 + 6 + 8 + 8 + 1; // Batch header, Genome length, Checkpoint header, score, mutability, flags
+
+        byte[] huge = whole.clone(); // An activation count of 0xFFFFFFFF, negative as an int
+        for(int i = 0; i < 4; ++i) huge[activations + i] = (byte) 0xFF;
+        huge[activations + 4] = 0x0F;
+        assertEquals(1, receive(huge).getRejected());
+
+        byte[] stage = whole.clone(); // First GeneNode with stage 3
+        stage[activations + 1 + whole[activations] + 2] |= 3;
+        assertEquals(1, receive(stage).getRejected());
+
+        long rejected = 0;
+        for(int i = 0; i < whole.length; ++i) { // Every byte in turn, read without throwing whatever it holds
+            byte[] flipped = whole.clone();
+            flipped[i] ^= (byte) 0xA5;
+            Island to = receive(flipped);
+            assertEquals(1, to.getReceived() / 2 + to.getRejected());
+            rejected += to.getRejected();
+        }
+        assertTrue(rejected > 0);
+    }
+
+}
@@ -0,0 +1,71 @@
+
+package neat;
+
+import java.nio.ByteBuffer;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Runs the same seed on one thread and on many, which should give the same Genomes and the same InnovationRegistry
+ * @author rewil
+ */
+public class ParallelismTest {
+
+    private static final FitnessEvaluator fitness = FitnessEvaluator.sync(g -> g.getComplexity());
+
+    private static SpeciesManipulator seeded(int parallelism) {
+        SpeciesManipulator sm = new SpeciesManipulator(5, 3, 200, 0.5);
+        sm.setSeed(3);
+        sm.setParallelism(parallelism);
+        return sm;
+    }
+    private static byte[] bytes(ByteBuffer b) {
+        byte[] out = new byte[b.remaining()];
+        b.get(out);
+        return out;
+    }
+    /**
+     * Fails unless the two hold the same Genomes and Species, numbered by the same registry, see Checkpoint
+     * @param step
+     * @param one
+     * @param many
+     */
+    private static void assertSame(String step, SpeciesManipulator one, SpeciesManipulator many) {
+        InnovationRegistry a = one.getInnovationRegistry(), b = many.getInnovationRegistry();
+        assertEquals(step + ", connection innovations", a.getConnectionCount(), b.getConnectionCount());
+        assertEquals(step + ", GeneNode nums", a.getNodeCount(), b.getNodeCount());
+        assertArrayEquals(step, bytes(Checkpoint.encode(one)), bytes(Checkpoint.encode(many)));
+    }
+
+    @Test
+    public void mutateIsTheSameOnAnyNumberOfThreads() {
+        SpeciesManipulator one = seeded(1), many = seeded(8);
+        try {
+            for(int i = 0; i < 5; ++i) {
+                one.mutate(10);
+                many.mutate(10);
+                assertSame("Round " + i, one, many);
+            }
+        } finally {
+            many.setParallelism(1);
+        }
+    }
+
+    @Test
+    public void generationsAreTheSameOnAnyNumberOfThreads() {
+        SpeciesManipulator one = seeded(1), many = seeded(8);
+        try {
+            for(int i = 0; i < 5; ++i) {
+                one.evaluate(fitness);
+                many.evaluate(fitness);
+                one.process(30);
+                many.process(30);
+                assertSame("Generation " + i, one, many);
+            }
+        } finally {
+            many.setParallelism(1);
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+
+package neat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the SelectionStrategies against a plain sort, and the survivors they write against the rules of SelectionStrategy.select()
+ * @author rewil
+ */
+public class SelectionTest {
+
+    private static final double[] odd = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, -0.0, -1, 1};
+
+    /**
+     * Returns size scores drawn from a few values, so many are tied, mixed with NaN, infinities, zeros of both signs and negatives
+     * @param rand
+     * @param size
+     * @return
+     */
+    private static double[] scores(SplittableRandom rand, int size) {
+        double[] out = new double[size];
+        int values = 1 + rand.nextInt(8);
+        for(int i = 0; i < size; ++i) {
+            if(rand.nextInt(10) == 0) out[i] = odd[rand.nextInt(odd.length)];
+            else out[i] = rand.nextInt(values) - values / 2;
+        }
+        return out;
+    }
+    /**
+     * Returns the count highest ranked indexes, found by a stable sort from lowest to highest score, read from the top
+     * @param scores
+     * @param count
+     * @return
+     */
+    private static int[] sorted(double[] scores, int count) {
+        Integer[] order = new Integer[scores.length];
+        for(int i = 0; i < order.length; ++i) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(scores[a], scores[b])); // Stable, so tied members keep their index order
+        Collections.reverse(Arrays.asList(order));
+        int[] out = new int[count];
+        for(int i = 0; i < count; ++i) out[i] = order[i];
+        return out;
+    }
+    /**
+     * Fails unless the first written survivors are distinct members
+     * @param survivors
+     * @param written
+     * @param size
+     */
+    private static void assertDistinct(int[] survivors, int written, int size) {
+        boolean[] seen = new boolean[size];
+        for(int i = 0; i < written; ++i) {
+            assertTrue("Survivor " + survivors[i] + " of " + size, survivors[i] >= 0 && survivors[i] < size);
+            assertFalse("Survivor " + survivors[i] + " picked twice", seen[survivors[i]]);
+            seen[survivors[i]] = true;
+        }
+    }
+
+    @Test
+    public void truncationMatchesAStableSort() {
+        SplittableRandom rand = new SplittableRandom(24);
+        SelectionStrategy truncation = SelectionStrategy.truncation();
+        for(int c = 0; c < 20_000; ++c) {
+            int size = rand.nextInt(10) == 0 ? rand.nextInt(400) : rand.nextInt(40); // Some past the insertion sort cutoff
+            double[] scores = scores(rand, size);
+            double[] before = scores.clone();
+            int count = rand.nextInt(size + 1);
+            int[] survivors = new int[size];
+            assertEquals(count, truncation.select(scores, size, count, survivors, rand));
+            assertArrayEquals("Case " + c + " " + Arrays.toString(scores) + " keeping " + count, sorted(scores, count), Arrays.copyOf(survivors, count));
+            assertTrue("Scores changed", Arrays.equals(before, scores));
+        }
+    }
+
+    @Test
+    public void tournamentPicksCountDistinctMembers() {
+        SplittableRandom rand = new SplittableRandom(5);
+        for(int entrants : new int[]{1, 2, 7}) {
+            SelectionStrategy tournament = SelectionStrategy.tournament(entrants);
+            for(int c = 0; c < 2_000; ++c) {
+                int size = rand.nextInt(50);
+                double[] scores = scores(rand, size);
+                int count = rand.nextInt(size + 1);
+                int[] survivors = new int[size];
+                int written = tournament.select(scores, size, count, survivors, rand);
+                assertEquals(count, written);
+                assertDistinct(survivors, written, size);
+            }
+        }
+    }
+
+    @Test
+    public void tournamentOfEveryoneKeepsTheFittest() {
+        double[] scores = {-7, -3, -12, -3.5, -20};
+        int[] survivors = new int[scores.length];
+        SelectionStrategy.tournament(1000).select(scores, scores.length, 2, survivors, new SplittableRandom(1));
+        assertEquals("Highest negative score first", 1, survivors[0]);
+        assertEquals(3, survivors[1]);
+    }
+
+    @Test
+    public void stochasticUniversalPicksDistinctMembers() {
+        SplittableRandom rand = new SplittableRandom(9);
+        SelectionStrategy sus = SelectionStrategy.stochasticUniversal();
+        for(int c = 0; c < 2_000; ++c) {
+            int size = rand.nextInt(50);
+            double[] scores = scores(rand, size);
+            int count = rand.nextInt(size + 1);
+            int[] survivors = new int[size];
+            int written = sus.select(scores, size, count, survivors, rand);
+            assertTrue(written <= count);
+            assertTrue("Nobody survived of " + size, count == 0 || written > 0);
+            assertDistinct(survivors, written, size);
+        }
+    }
+
+    @Test
+    public void stochasticUniversalMeasuresNegativeScoresFromTheLowest() {
+        double[] scores = {-5, -1, -9, -3};
+        int[] survivors = new int[scores.length];
+        SplittableRandom rand = new SplittableRandom(2);
+        for(int c = 0; c < 1_000; ++c) {
+            int written = SelectionStrategy.stochasticUniversal().select(scores, scores.length, 3, survivors, rand);
+            for(int i = 0; i < written; ++i) assertTrue("The lowest score weighs nothing", survivors[i] != 2);
+        }
+        double[] equal = {-4, -4, -4, -4};
+        assertEquals("Every member of an equal Species", 4, SelectionStrategy.stochasticUniversal().select(equal, 4, 4, survivors, rand));
+    }
+
+}